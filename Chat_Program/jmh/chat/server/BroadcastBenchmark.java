@@ -0,0 +1,92 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// 방 브로드캐스트: 프레임을 한 번 인코딩한 뒤 메모리 수신자 N명의 송신 대기열에 추가 (보낸 사람 제외)
+// 브로드캐스트 한 번의 할당량은 -prof gc의 gc.alloc.rate.norm (B/op)으로 비교한다
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+    static final String BODY = "안녕하세요 벤치마크 메시지입니다";
+    static final String TEXT = "[user0](12:00:00): " + BODY;
+
+    @Param({"10", "100", "1000"})
+    int recipients;
+
+    ChatServer server;
+    ClientService[] members;
+    ChatRoom room;
+
+    @Setup
+    public void setup() {
+        server = MemoryClients.server();
+        members = new ClientService[recipients + 1];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = MemoryClients.member(server, "user" + i, "bench");
+        }
+        room = members[0].room;
+    }
+
+    void drainAll() {
+        for (ClientService member : members) {
+            MemoryClients.drain(member);
+        }
+    }
+
+    // 텍스트 클라이언트만 있는 방
+    @Benchmark
+    public void text() {
+        room.fanOut(members[0], TEXT, "user0", 0L, null);
+        drainAll();
+    }
+
+    // sendToAll 전체: 대화 형식 만들기, 로그 기록, 방 브로드캐스트 쓰레드의 fan-out (마지막 수신자가 받을 때까지)
+    @Benchmark
+    public void sendToAll() throws InterruptedException {
+        server.sendToAll(members[0], BODY);
+        MemoryClients.await(members[members.length - 1]);
+        drainAll();
+    }
+
+    // 비교 기준: 수신자마다 writeUTF로 다시 인코딩하던 이전 방식 (수신자 수에 비례해 할당)
+    @Benchmark
+    public void encodePerRecipient() throws IOException {
+        for (int i = 1; i < members.length; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(TEXT);
+            members[i].sendFrame(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        drainAll();
+    }
+
+    // 텍스트와 바이너리 클라이언트가 섞인 방 (프로토콜마다 한 번씩 인코딩)
+    @Benchmark
+    public void mixed() {
+        ClientService binary = members[members.length / 2];
+        binary.binary = true;
+        room.fanOut(members[0], TEXT, "user0", 0L, BODY);
+        binary.binary = false;
+        drainAll();
+    }
+}
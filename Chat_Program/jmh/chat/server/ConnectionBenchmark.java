@@ -0,0 +1,117 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 접속 한도 부하 시험: 블로킹 서버에 연결을 하나씩 열어 로그인(첫 응답 수신)을 확인하며 connections개까지 늘리는 시간
+// (연결을 쌓아 두기만 하므로 앞선 연결의 쓰레드/메모리가 뒤 연결의 비용에 반영됨)
+// thread: 클라이언트마다 플랫폼 쓰레드 (수신/송신), virtual: 같은 코드를 가상 쓰레드로 (JDK 21 이상에서 실행)
+// 보조 지표 loggedIn(제한 시간 안에 로그인한 연결 수)과 platformThreads(그때의 JVM 플랫폼 쓰레드 수)로 한도를 비교한다.
+// 연결 수를 늘려(-p connections=10000) 쓰레드 모드가 먼저 쓰레드를 만들지 못하는 지점을 찾는다 (ulimit -n, -u도 함께 확인)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Dchat.store.dir=", "-Dchat.outbound.capacity=64"})
+@State(Scope.Benchmark)
+public class ConnectionBenchmark {
+
+    static final int LOGIN_TIMEOUT_MILLIS = 10_000; // 이 시간 안에 로그인하지 못한 연결은 한도를 넘은 것으로 봄
+
+    @Param({"thread", "virtual"})
+    String mode;
+
+    @Param({"1000"})
+    int connections;
+
+    ChatServer server;
+    InetSocketAddress address;
+    List<SocketChannel> clients = new ArrayList<>();
+    PrintStream console = System.out;
+
+    // 측정 구간마다 보고하는 보조 지표
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Ceiling {
+        public long loggedIn;
+        public long platformThreads;
+    }
+
+    @Setup
+    public void setup() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream())); // 입장/퇴장마다 찍는 서버 로그 숨김
+        server = MemoryClients.server();
+        if (mode.equals("virtual") && !server.useVirtualThreads()) {
+            throw new IllegalStateException("가상 쓰레드 모드는 JDK 21 이상에서 실행해야 합니다");
+        }
+        server.start(0);
+        server.connectClient();
+        address = new InetSocketAddress("127.0.0.1", server.serverSocket.getLocalPort());
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.draining = true; // 수락 쓰레드가 닫힌 소켓 오류를 출력하지 않도록
+        server.stop();
+        System.setOut(console);
+    }
+
+    @TearDown(Level.Iteration)
+    public void disconnect() throws Exception {
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        clients.clear();
+        long deadline = System.currentTimeMillis() + LOGIN_TIMEOUT_MILLIS;
+        while (server.clients.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10); // 다음 측정 전에 서버가 모든 연결을 정리할 때까지
+        }
+    }
+
+    @Benchmark
+    public void connectAll(Ceiling ceiling) throws Exception {
+        try {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel client = SocketChannel.open(address);
+                clients.add(client);
+                byte[] name = ("load" + i).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer hello = ByteBuffer.allocate(2 + name.length).putShort((short) name.length).put(name).flip();
+                while (hello.hasRemaining()) {
+                    client.write(hello); // 닉네임 프레임 (writeUTF 형식)
+                }
+                client.socket().setSoTimeout(LOGIN_TIMEOUT_MILLIS);
+                DataInputStream in = new DataInputStream(client.socket().getInputStream());
+                in.skipNBytes(in.readUnsignedShort()); // 첫 응답까지 받으면 로그인 완료. 이후 메시지는 읽지 않음
+            }
+        } catch (SocketTimeoutException e) {
+            // 서버가 더 이상 연결을 처리하지 못함 (쓰레드 생성 실패 등): 여기까지가 한도
+        }
+        ceiling.loggedIn = server.clients.size();
+        ceiling.platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+}
@@ -0,0 +1,75 @@
+package chat.server;
+
+import chat.common.Protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// 명령 해석/분기: 수신한 텍스트 메시지와 바이너리 프레임 처리
+// 대화는 방 브로드캐스트 쓰레드로 넘기기만 하므로, 같은 방의 다른 참여자 대기열에 프레임이 들어올 때까지 기다려
+// 넘긴 뒤의 fan-out까지 측정에 포함한다. 명령 응답은 요청한 클라이언트의 대기열에 들어올 때까지 기다림
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    ChatServer server;
+    ClientService sender;
+    ClientService listener; // 같은 방에서 대화를 받는 참여자
+    ByteBuffer chatFrame = new Protocol.Writer(Protocol.CHAT, 32).writeString("안녕하세요").finish();
+    ByteBuffer roomsFrame = new Protocol.Writer(Protocol.ROOMS, 0).finish();
+
+    @Setup
+    public void setup() {
+        server = MemoryClients.server();
+        sender = MemoryClients.member(server, "sender", "dispatch");
+        listener = MemoryClients.member(server, "listener", "dispatch");
+    }
+
+    // 길이 varint를 건너뛴 프레임 본문 (수신 버퍼에서 잘라낸 것과 같음)
+    static ByteBuffer body(ByteBuffer frame) {
+        ByteBuffer buffer = frame.duplicate();
+        while (buffer.get() < 0) {
+            // 길이 varint 건너뜀
+        }
+        return buffer.slice();
+    }
+
+    @Benchmark
+    public void textChat() throws InterruptedException {
+        sender.handleMessage("안녕하세요");
+        MemoryClients.await(listener);
+    }
+
+    @Benchmark
+    public void textRooms() throws InterruptedException {
+        sender.handleMessage("/rooms");
+        MemoryClients.await(sender);
+    }
+
+    @Benchmark
+    public void binaryChat() throws InterruptedException {
+        sender.handleFrame(body(chatFrame));
+        MemoryClients.await(listener);
+    }
+
+    @Benchmark
+    public void binaryRooms() throws InterruptedException {
+        sender.handleFrame(body(roomsFrame));
+        MemoryClients.await(sender);
+    }
+}
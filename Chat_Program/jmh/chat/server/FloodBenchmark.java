@@ -0,0 +1,99 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 브로드캐스트 폭주: 여러 쓰레드가 각자의 방에서 쉬지 않고 대화를 보낼 때의 초당 처리량
+// async: 로그를 AsyncLogWriter 큐에 넣기만 함 (파일 기록은 작성기 쓰레드가 모아서)
+// sync: 비교 기준. 이전 synchronized sendToAll/writeLog처럼 서버 전체 락을 잡은 채 autoflush PrintWriter로 한 줄마다 기록
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class FloodBenchmark {
+
+    static final String BODY = "안녕하세요 벤치마크 메시지입니다";
+
+    // 모든 쓰레드가 함께 쓰는 서버와 로그 기록기
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"async", "sync"})
+        String writer;
+
+        ChatServer server;
+        File logFile;
+        PrintWriter syncLog; // sync일 때만
+        AtomicInteger rooms = new AtomicInteger();
+
+        @Setup
+        public void setup() throws IOException {
+            server = MemoryClients.server();
+            logFile = File.createTempFile("bench-flood", ".txt");
+            if (writer.equals("async")) {
+                server.logWriter = new AsyncLogWriter(logFile.getPath(), null, 256, 50, false);
+            } else {
+                syncLog = new PrintWriter(new FileWriter(logFile, true), true);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            if (server.logWriter != null) {
+                server.logWriter.close();
+            } else {
+                syncLog.close();
+            }
+            logFile.delete();
+        }
+    }
+
+    // 쓰레드마다 보내는 사람과 받는 사람 한 명이 있는 방
+    @State(Scope.Thread)
+    public static class Room {
+
+        ClientService sender;
+        ClientService listener;
+
+        @Setup
+        public void setup(Server s) {
+            String room = "flood" + s.rooms.incrementAndGet();
+            sender = MemoryClients.member(s.server, room + "-sender", room);
+            listener = MemoryClients.member(s.server, room + "-listener", room);
+        }
+    }
+
+    // 받는 사람에게 전달될 때까지 기다리므로 방 브로드캐스트 대기열이 끝없이 쌓이지 않음
+    @Benchmark
+    public void broadcast(Server s, Room r) throws InterruptedException {
+        if (s.syncLog == null) {
+            s.server.sendToAll(r.sender, BODY);
+        } else {
+            synchronized (s.server) {
+                s.server.sendToAll(r.sender, BODY);
+                s.syncLog.println(BODY); // 락을 잡은 채 write 시스템 호출
+            }
+        }
+        MemoryClients.await(r.listener);
+    }
+}
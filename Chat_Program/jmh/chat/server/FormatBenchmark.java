@@ -0,0 +1,46 @@
+package chat.server;
+
+import chat.common.Protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// 메시지 형식/인코딩: 대화 한 줄 만들기(시각 포함)와 텍스트/바이너리 프레임 인코딩
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+
+    static final String BODY = "안녕하세요 벤치마크 메시지입니다";
+    static final String TEXT = "[user0](12:00:00): " + BODY;
+
+    ChatServer server = new ChatServer();
+
+    @Benchmark
+    public String formatChat() {
+        return server.formatChat("user0", System.currentTimeMillis(), BODY);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeText() {
+        return OutboundQueue.encode(TEXT);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        return ClientService.messageFrame(Protocol.CHAT_MESSAGE, "user0", 0L, BODY);
+    }
+}
@@ -0,0 +1,46 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 최근 로그 출력: 메모리 로그에서 lines줄을 꺼내 프레임 크기만큼씩 나누어 송신 대기열에 추가
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    @Param({"200"})
+    int lines;
+
+    ChatServer server;
+    ClientService client;
+
+    @Setup
+    public void setup() {
+        server = MemoryClients.server();
+        client = MemoryClients.client(server, "reader");
+        for (int i = 0; i < server.chatLogs.capacity(); i++) {
+            server.chatLogs.add("[user" + (i % 50) + "](12:00:00): 안녕하세요 벤치마크 메시지입니다 " + i);
+        }
+    }
+
+    @Benchmark
+    public void render() {
+        server.sendChunked(client, "", server.chatLogs.range(-1, lines));
+        MemoryClients.drain(client);
+    }
+}
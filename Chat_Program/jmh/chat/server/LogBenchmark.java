@@ -0,0 +1,55 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// 로그 추가: 메모리 원형 버퍼와 로그 파일 작성기 큐 (파일 기록은 작성기 쓰레드가 따로 함)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogBenchmark {
+
+    static final String TEXT = "[user0](12:00:00): 안녕하세요 벤치마크 메시지입니다";
+
+    ChatHistory history = new ChatHistory(10000);
+    File logFile;
+    AsyncLogWriter logWriter;
+
+    @Setup
+    public void setup() throws IOException {
+        logFile = File.createTempFile("bench-log", ".txt");
+        logWriter = new AsyncLogWriter(logFile.getPath(), null, 256, 50, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        logWriter.close();
+        logFile.delete();
+    }
+
+    @Benchmark
+    public void historyAdd() {
+        history.add(TEXT);
+    }
+
+    @Benchmark
+    public void writerAppend() {
+        logWriter.append(0L, MessageStore.TYPE_CHAT, "user0", ChatServer.LOBBY, TEXT);
+    }
+}
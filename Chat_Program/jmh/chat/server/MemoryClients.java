@@ -0,0 +1,46 @@
+package chat.server;
+
+// 벤치마크용 서버와 소켓 없이 송신 대기열만 가진 클라이언트
+final class MemoryClients {
+
+    private MemoryClients() {
+    }
+
+    // 요청 한도를 끈 서버 (벤치마크가 한도에 걸려 멈추지 않도록)
+    static ChatServer server() {
+        ChatServer server = new ChatServer();
+        server.messageLimit = 0;
+        server.byteLimit = 0;
+        server.logsLimit = 0;
+        server.usersLimit = 0;
+        server.imageLimit = 0;
+        return server;
+    }
+
+    static ClientService client(ChatServer server, String name) {
+        ClientService client = new ClientService(server, (NioSession) null);
+        client.chatName = name;
+        server.clients.register(name, client);
+        return client;
+    }
+
+    // 방에 들어간 클라이언트
+    static ClientService member(ChatServer server, String name, String room) {
+        ClientService client = client(server, name);
+        server.enterRoom(client, room);
+        return client;
+    }
+
+    // 대기열에 쌓인 프레임 버림
+    static void drain(ClientService client) {
+        while (client.outbound.poll() != null) {
+            // 버림
+        }
+    }
+
+    // 방 브로드캐스트 쓰레드가 프레임을 넣을 때까지 기다렸다가 버림 (fan-out이 끝날 때까지 측정에 포함)
+    static void await(ClientService client) throws InterruptedException {
+        client.outbound.take();
+        drain(client);
+    }
+}
@@ -0,0 +1,101 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Hashtable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 접속자 목록 경합: 같은 목록을 여러 쓰레드가 동시에 사용 (귓속말 대상 조회 2, 브로드캐스트 목록 1, 닉네임 변경 1)
+// registry: 현재 ClientRegistry (조회는 락 없음, 변경만 copy-on-write 교체)
+// hashtable: 비교 기준. 이전처럼 Hashtable과 서버 전체 락으로 모든 연산을 직렬화
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class RegistryBenchmark {
+
+    static final int USERS = 1000;
+
+    @Param({"registry", "hashtable"})
+    String impl;
+
+    ClientRegistry registry = new ClientRegistry();
+    Hashtable<String, ClientService> table = new Hashtable<>();
+    Object monitor = new Object(); // 이전 synchronized (chatServer)
+    String[] names = new String[USERS];
+    ClientService renamed; // 닉네임을 계속 바꾸는 클라이언트
+    boolean toggled;
+
+    @Setup
+    public void setup() {
+        ChatServer server = MemoryClients.server();
+        for (int i = 0; i < USERS; i++) {
+            names[i] = "user" + i;
+            ClientService client = new ClientService(server, (NioSession) null);
+            client.chatName = names[i];
+            registry.register(names[i], client);
+            table.put(names[i], client);
+        }
+        renamed = registry.get(names[0]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public ClientService lookup() {
+        String name = names[ThreadLocalRandom.current().nextInt(USERS)];
+        if (impl.equals("registry")) {
+            return registry.get(name);
+        }
+        synchronized (monitor) {
+            return table.get(name);
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public int snapshot() {
+        if (impl.equals("registry")) {
+            return registry.snapshot().length;
+        }
+        synchronized (monitor) {
+            return table.values().toArray(ClientRegistry.EMPTY).length; // 브로드캐스트마다 목록 복사
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public boolean rename() {
+        String from = toggled ? "renamed" : names[0];
+        String to = toggled ? names[0] : "renamed";
+        toggled = !toggled;
+        if (impl.equals("registry")) {
+            return registry.rename(renamed, from, to);
+        }
+        synchronized (monitor) {
+            if (table.containsKey(to)) {
+                return false;
+            }
+            table.remove(from);
+            table.put(to, renamed);
+            return true;
+        }
+    }
+}
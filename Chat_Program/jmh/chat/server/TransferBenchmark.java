@@ -0,0 +1,136 @@
+package chat.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+// 파일 전송: 루프백 소켓으로 파일 하나를 보냄. 받는 쪽 쓰레드는 읽고 버림
+// transferTo: 현재 방식 (제로 카피), heapCopy: 비교 기준. 이전 방식처럼 4KB byte[]로 읽어 소켓 스트림에 씀
+// 측정 구간마다 보내는/받는 쓰레드의 CPU 시간을 MB당 ms로 출력 (처리량은 MB / 연산당 시간)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"100"})
+    int megabytes;
+
+    File data;
+    FileChannel file;
+    ServerSocketChannel listener;
+    SocketChannel sender;
+    SocketChannel receiver;
+    Thread sink;
+    OutputStream stream; // heapCopy용 소켓 스트림
+    long bytesSent; // 이번 측정 구간에 보낸 바이트
+    long senderCpuStart; // 측정 구간 시작 때의 CPU 시간 (나노초, 반복 준비는 벤치마크 쓰레드에서 실행됨)
+    long sinkCpuStart;
+
+    @Setup
+    public void setup() throws IOException {
+        data = File.createTempFile("bench-file", ".bin");
+        try (RandomAccessFile raf = new RandomAccessFile(data, "rw")) {
+            raf.setLength(megabytes * 1024L * 1024);
+        }
+        file = FileChannel.open(data.toPath(), StandardOpenOption.READ);
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        sender = SocketChannel.open(listener.getLocalAddress());
+        receiver = listener.accept();
+        sink = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            try {
+                while (receiver.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // 종료
+            }
+        }, "bench-sink");
+        sink.setDaemon(true);
+        sink.start();
+        stream = sender.socket().getOutputStream();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        bytesSent = 0;
+        senderCpuStart = THREADS.getCurrentThreadCpuTime();
+        sinkCpuStart = THREADS.getThreadCpuTime(sink.getId());
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        double mb = bytesSent / (1024.0 * 1024);
+        double senderMillis = (THREADS.getCurrentThreadCpuTime() - senderCpuStart) / 1e6;
+        double sinkMillis = (THREADS.getThreadCpuTime(sink.getId()) - sinkCpuStart) / 1e6;
+        if (mb > 0) { // 포크된 JVM의 출력 인코딩과 무관하도록 ASCII로 출력
+            System.out.printf("  CPU %.3f ms/MB (sender %.3f, receiver %.3f)%n",
+                    (senderMillis + sinkMillis) / mb, senderMillis / mb, sinkMillis / mb);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        listener.close();
+        file.close();
+        data.delete();
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        long size = file.size();
+        long position = 0;
+        while (position < size) {
+            position += file.transferTo(position, size - position, sender);
+        }
+        bytesSent += position;
+        return position;
+    }
+
+    @Benchmark
+    public long heapCopy() throws IOException {
+        byte[] buffer = new byte[4096];
+        long total = 0;
+        try (FileInputStream in = new FileInputStream(data)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                stream.write(buffer, 0, read);
+                total += read;
+            }
+        }
+        bytesSent += total;
+        return total;
+    }
+}
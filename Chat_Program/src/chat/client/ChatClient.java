@@ -1,8 +1,33 @@
 package chat.client;
 
+import chat.common.ChunkMap;
+import chat.common.Protocol;
+import chat.common.TextFrames;
+
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ChatClient {
 
@@ -10,46 +35,171 @@ public class ChatClient {
     Socket socket; // 서버와의 연결 소켓
     DataInputStream dis; // 서버에서 데이터 수신
     DataOutputStream dos; // 서버로 데이터 전송
+    String serverIP; // 서버 주소 (파일 전송 연결용)
+    int portNo; // 서버 포트 (파일 전송 연결용)
+    volatile String transferToken; // 파일 전송 연결 인증 토큰 (서버가 /session:토큰 으로 전달)
+    boolean binary; // 서버와 바이너리 프로토콜로 협상했는지 여부
+    String protocol = System.getProperty("chat.protocol", "binary"); // text 이면 협상 없이 기존 텍스트 프로토콜 사용
+    // 바이너리 메시지의 시각 표시 형식
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    // 파일 전송 전용 쓰레드 (채팅 수신 쓰레드가 전송 때문에 멈추지 않도록 분리)
+    ExecutorService transferExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "file-transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 청크 병렬 전송용 연결 쓰레드
+    ExecutorService streamExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "file-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    int transferStreams = Integer.getInteger("chat.transfer.streams", 4); // 파일 하나에 동시에 여는 전송 연결 수
+    static final int TRANSFER_ROUNDS = 3; // 실패한 청크를 다시 보내는 최대 횟수
+    static final long RECONNECT_MAX_MILLIS = 30000; // 재접속 재시도 간격의 최대값
+    int reconnectAttempts = Integer.getInteger("chat.reconnect.attempts", 10); // 서버 재시작 후 재접속 시도 횟수
+    volatile long reconnectDelay = -1; // 서버가 종료 전에 알려 준 재접속 대기 시간 (ms, 음수면 재접속하지 않음)
 
     final String quitCommand = "quit"; // 채팅 종료 명령어
     final String userListCommand = "/users";
     final String helpCommand = "/help";
 
-    // 서버 연결 메서드
-    public void connect(String serverIP, int portNo, String chatName) {
+    // 서버 연결 메서드 (성공하면 true)
+    public boolean connect(String serverIP, int portNo, String chatName) {
         try {
-            socket = new Socket(serverIP, portNo); // 서버와 연결
+            transferToken = null; // 접속마다 새 토큰을 받음
+            binary = false; // 재접속이면 협상을 다시 함
+            // 채널 기반 소켓으로 연결 (파일 전송 시 transferTo/transferFrom 사용)
+            socket = SocketChannel.open(new InetSocketAddress(serverIP, portNo)).socket();
             dis = new DataInputStream(socket.getInputStream()); // 입력 스트림 초기화
             dos = new DataOutputStream(socket.getOutputStream()); // 출력 스트림 초기화
             this.chatName = chatName;
+            this.serverIP = serverIP;
+            this.portNo = portNo;
 
-            send(chatName); // 서버로 대화명 전송
+            String pending = null; // 협상 응답 대신 받은 일반 메시지 (협상을 모르는 서버)
+            if (protocol.equals("text")) {
+                send(chatName); // 서버로 대화명 전송
+            } else {
+                send(Protocol.HELLO + Protocol.VERSION + ":" + chatName); // 바이너리 프로토콜 협상 (대화명 포함)
+                String reply = dis.readUTF();
+                binary = reply.equals(Protocol.HELLO + Protocol.VERSION); // /proto:0 이면 텍스트 프로토콜 유지
+                if (!reply.startsWith(Protocol.HELLO)) {
+                    pending = reply;
+                }
+            }
             System.out.println("[" + chatName + "] 서버 연결 성공 (" + serverIP + ":" + portNo + ")");
+            if (pending != null) {
+                System.out.println(pending);
+            }
             receive(); // 메시지 수신 대기
+            return true;
         } catch (IOException e) {
             System.out.println("[에러] 서버 연결 실패: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 서버가 종료를 알린 뒤 다시 접속. 서버가 클라이언트마다 다르게 정해 준 시각에 먼저 시도하고,
+    // 실패하면 간격을 두 배씩 늘리되 절반은 무작위로 정해 여러 클라이언트가 같은 순간에 몰리지 않게 한다
+    void reconnect() {
+        long delay = reconnectDelay;
+        reconnectDelay = -1;
+        long backoff = 1000;
+        for (int attempt = 0; attempt < reconnectAttempts; attempt++) {
+            System.out.println("[재접속] " + delay + "ms 후 다시 접속합니다. (" + (attempt + 1) + "/" + reconnectAttempts + ")");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (connect(serverIP, portNo, chatName)) {
+                return;
+            }
+            delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            backoff = Math.min(RECONNECT_MAX_MILLIS, backoff * 2);
         }
+        quit();
     }
 
-    // 서버로 메시지 전송
+    // 서버로 메시지 전송 (바이너리 모드에서는 명령을 opcode 프레임으로 변환)
     public void send(String msg) {
         try {
-            dos.writeUTF(msg); // 메시지 전송
+            if (binary) {
+                ByteBuffer frame = encode(msg);
+                if (frame == null) {
+                    return;
+                }
+                byte[] bytes = new byte[frame.remaining()];
+                frame.get(bytes);
+                dos.write(bytes);
+            } else {
+                TextFrames.write(dos, msg); // 메시지 전송 (64KB를 넘으면 이어지는 프레임으로 나눔)
+            }
             dos.flush(); // 스트림 비우기
         } catch (IOException e) {
             System.out.println("[에러] 메시지 전송 실패: " + e.getMessage());
         }
     }
 
+    // 입력을 바이너리 명령 프레임으로 변환 (형식이 틀리면 안내를 출력하고 null)
+    static ByteBuffer encode(String input) {
+        if (input.startsWith("/rename:")) {
+            return new Protocol.Writer(Protocol.RENAME, 32).writeString(input.substring("/rename:".length())).finish();
+        } else if (input.startsWith("/to:")) {
+            int slash = input.indexOf('/', "/to:".length());
+            if (slash < 0) {
+                System.out.println("[에러] 귓속말 형식 오류. 사용법: /to:닉네임/메시지");
+                return null;
+            }
+            return new Protocol.Writer(Protocol.WHISPER, input.length() * 3)
+                    .writeString(input.substring("/to:".length(), slash)).writeString(input.substring(slash + 1)).finish();
+        } else if (input.equals("/users:watch") || input.equals("/users:unwatch")) {
+            return new Protocol.Writer(Protocol.WATCH_USERS, 1).writeVarint(input.equals("/users:watch") ? 1 : 0).finish();
+        } else if (input.startsWith("/users")) {
+            return new Protocol.Writer(Protocol.USERS, 0).finish();
+        } else if (input.startsWith("/logs")) {
+            String[] parts = input.split(":");
+            try {
+                int offset = parts.length == 3 ? Integer.parseInt(parts[1].trim()) : -1;
+                int count = parts.length >= 2 ? Integer.parseInt(parts[parts.length - 1].trim()) : 0; // 0이면 전체
+                if (parts.length > 3 || !parts[0].equals("/logs") || count < 0 || (parts.length == 3 && offset < 0)) {
+                    throw new NumberFormatException();
+                }
+                return new Protocol.Writer(Protocol.LOGS, 10).writeSigned(offset).writeVarint(count).finish();
+            } catch (NumberFormatException e) {
+                System.out.println("[에러] 로그 요청 형식 오류. 사용법: /logs, /logs:개수, /logs:시작:개수");
+                return null;
+            }
+        } else if (input.startsWith("/search:")) {
+            return new Protocol.Writer(Protocol.SEARCH, input.length() * 3).writeString(input.substring("/search:".length())).finish();
+        } else if (input.startsWith("/join:")) {
+            return new Protocol.Writer(Protocol.JOIN, 32).writeString(input.substring("/join:".length())).finish();
+        } else if (input.equals("/leave")) {
+            return new Protocol.Writer(Protocol.LEAVE, 0).finish();
+        } else if (input.equals("/rooms")) {
+            return new Protocol.Writer(Protocol.ROOMS, 0).finish();
+        }
+        return new Protocol.Writer(Protocol.CHAT, input.length() * 3).writeString(input).finish();
+    }
+
     // 서버로부터 메시지 수신
     public void receive() {
         new Thread(() -> {
             try {
                 while (true) {
-                    String msg = dis.readUTF(); // 메시지 수신
-                    if (msg.startsWith("/file:")) {
-                        // 파일 전송 시작
-                        handleIncomingFile(msg);
+                    if (binary) {
+                        receiveFrame(Protocol.readFrame(dis)); // 바이너리 프레임 수신
+                        continue;
+                    }
+                    String msg = TextFrames.read(dis); // 메시지 수신 (나뉘어 온 긴 메시지는 합침)
+                    if (msg.startsWith("/session:")) {
+                        transferToken = msg.substring("/session:".length()); // 화면에 출력하지 않음
+                    } else if (msg.startsWith("/reconnect:")) {
+                        reconnectDelay = Long.parseLong(msg.substring("/reconnect:".length())); // 연결이 끊기면 재접속
+                    } else if (msg.startsWith("/file:")) {
+                        // 파일 전송 시작 (전송 연결 토큰을 받기 전의 기존 방식)
+                        handleIncomingFile(msg, socket.getChannel());
                     } else if (msg.startsWith("[이미지]")) {
                         System.out.println(msg);
                         // 이미지 전송 알림 후 다운로드는 사용자가 /download:파일명 명령어로 요청
@@ -62,36 +212,87 @@ public class ChatClient {
             } catch (IOException e) {
                 System.out.println("[서버 연결 종료]");
             } finally {
-                quit(); // 종료 처리
+                if (reconnectDelay >= 0) {
+                    closeQuietly();
+                    reconnect(); // 서버 재시작: 안내받은 시각에 다시 접속
+                } else {
+                    quit(); // 종료 처리
+                }
             }
         }).start(); // 별도 쓰레드에서 실행
     }
 
-    // 파일 전송 시작 처리
-    private void handleIncomingFile(String msg) {
+    // 바이너리 프레임 처리 (알 수 없는 opcode는 새 버전 서버의 메시지이므로 무시)
+    private void receiveFrame(ByteBuffer frame) {
+        Protocol.Reader in = new Protocol.Reader(frame);
+        switch (in.opcode) {
+            case Protocol.CHAT_MESSAGE:
+            case Protocol.WHISPER_MESSAGE:
+                String from = in.readString();
+                String time = TIME_FORMAT.format(Instant.ofEpochMilli(in.readLong()));
+                String body = in.readString();
+                String prefix = in.opcode == Protocol.WHISPER_MESSAGE ? "[귓속말]" : "";
+                System.out.println(prefix + "[" + from + "](" + time + "): " + body);
+                System.out.print(">> "); // 프롬프트 재표시
+                break;
+            case Protocol.NOTICE:
+                System.out.println(in.readString());
+                System.out.print(">> ");
+                break;
+            case Protocol.SESSION:
+                transferToken = in.readString(); // 화면에 출력하지 않음
+                break;
+            case Protocol.RECONNECT:
+                reconnectDelay = in.readLong(); // 연결이 끊기면 재접속
+                break;
+            case Protocol.USER_EVENT:
+                int version = in.readVarint();
+                int kind = in.readVarint();
+                String name = in.readString();
+                String newName = in.readString();
+                System.out.println("[접속자 변경 #" + version + "] " + (kind == 0 ? "입장: " + name
+                        : kind == 1 ? "퇴장: " + name : "닉네임 변경: " + name + " -> " + newName));
+                System.out.print(">> ");
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 파일 전송 시작 처리 (전송 연결 토큰을 받기 전의 기존 방식, source: 파일 본문을 읽을 연결)
+    private void handleIncomingFile(String msg, ReadableByteChannel source) {
         try {
-            // 메시지 형식: /file:파일명:파일크기
-            String[] parts = msg.split(":", 3);
-            if (parts.length < 3) {
+            // 메시지 형식: /file:파일명:파일크기:청크크기:crc,... (이전 서버는 /file:파일명:파일크기)
+            String header = msg.substring("/file:".length());
+            int mapStart = chunkMapStart(header);
+            ChunkMap map = mapStart < 0 ? null : ChunkMap.parse(header.substring(mapStart + 1));
+            String[] parts = header.split(":", 2);
+            if (map == null && parts.length < 2) {
                 System.out.println("[에러] 파일 전송 형식 오류.");
                 System.out.print(">> ");
                 return;
             }
-            String fileName = parts[1].trim();
-            long fileSize = Long.parseLong(parts[2].trim());
+            String fileName = (map == null ? parts[0] : header.substring(0, mapStart)).trim();
+            long fileSize = map == null ? Long.parseLong(parts[1].trim()) : map.size();
 
             System.out.println("서버로부터 파일을 수신합니다: " + fileName + " (" + fileSize + " bytes)");
 
-            // 파일 수신 및 저장
-            FileOutputStream fos = new FileOutputStream("downloaded_" + fileName);
-            byte[] buffer = new byte[4096];
-            long totalRead = 0;
-            int read;
-            while (totalRead < fileSize && (read = dis.read(buffer, 0, buffer.length)) != -1) {
-                fos.write(buffer, 0, read);
-                totalRead += read;
+            // 파일 수신 및 저장 (소켓에서 파일로 바로 복사)
+            try (FileChannel fc = FileChannel.open(new File("downloaded_" + fileName).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long totalRead = 0;
+                while (totalRead < fileSize) {
+                    long read = fc.transferFrom(source, totalRead, fileSize - totalRead);
+                    if (read <= 0) break; // EOF
+                    totalRead += read;
+                }
+                List<Integer> corrupted = map == null ? new ArrayList<>() : map.missing(fc); // 청크별 CRC32C 검증
+                if (!corrupted.isEmpty()) {
+                    System.out.println("[에러] 손상된 청크가 있습니다: " + ChunkMap.formatIndices(corrupted));
+                    System.out.print(">> ");
+                    return;
+                }
             }
-            fos.close();
             System.out.println("[다운로드 완료] 파일명: downloaded_" + fileName);
             System.out.print(">> ");
         } catch (Exception e) {
@@ -100,6 +301,27 @@ public class ChatClient {
         }
     }
 
+    // /file 헤더에서 청크 목록이 시작하는 ':' 위치 (뒤에서 세 번째, 청크 목록이 없으면 -1)
+    private static int chunkMapStart(String header) {
+        int index = header.length();
+        for (int i = 0; i < 3; i++) {
+            index = header.lastIndexOf(':', index - 1);
+            if (index < 0) {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    // 끊긴 연결 정리 (재접속 전)
+    void closeQuietly() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 이미 닫힘
+        }
+    }
+
     // 프로그램 종료 처리
     public void quit() {
         try {
@@ -120,42 +342,212 @@ public class ChatClient {
             System.out.println("[에러] 파일이 존재하지 않습니다: " + filePath);
             return;
         }
-        send("/img:" + file.getName()); // 서버로 이미지 전송 요청 (파일명만 전송)
         System.out.println("[이미지 전송 요청] " + file.getName());
+        if (transferToken != null) {
+            transferExecutor.execute(() -> uploadImage(file)); // 별도 연결에서 전송
+            return;
+        }
+        if (binary) {
+            System.out.println("[에러] 전송 연결 토큰을 아직 받지 못했습니다. 잠시 후 다시 시도하세요.");
+            return;
+        }
+        send("/img:" + file.getName()); // 서버로 이미지 전송 요청 (파일명만 전송)
 
         // 이미지 파일 전송
         try {
             dos.writeLong(file.length()); // 파일 크기 전송
-            FileInputStream fis = new FileInputStream(file);
-            byte[] buffer = new byte[4096];
-            int read;
-            while ((read = fis.read(buffer)) != -1) {
-                dos.write(buffer, 0, read);
-            }
             dos.flush();
-            fis.close();
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = fc.size();
+                long position = 0;
+                while (position < size) {
+                    position += fc.transferTo(position, size - position, socket.getChannel()); // 제로 카피 전송
+                }
+            }
             System.out.println("[이미지 전송 완료] " + file.getName());
         } catch (IOException e) {
             System.out.println("[에러] 이미지 전송 실패: " + e.getMessage());
         }
     }
 
+    // 파일 전송 전용 연결을 열고 요청 전송 (형식: /data:토큰:요청)
+    private SocketChannel openTransfer(String request) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(serverIP, portNo));
+        new DataOutputStream(Channels.newOutputStream(channel)).writeUTF("/data:" + transferToken + ":" + request);
+        return channel;
+    }
+
+    // 전송 연결로 이미지 업로드 (전송 쓰레드에서 실행)
+    // 청크 목록을 보내면 서버가 받아야 할 청크를 알려 주므로, 중단됐던 업로드는 남은 청크만 보낸다
+    private void uploadImage(File file) {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChunkMap map = ChunkMap.compute(fc); // 청크별 CRC32C
+            try (SocketChannel control = openTransfer("upload:" + map + ":" + file.getName())) {
+                DataInputStream in = new DataInputStream(Channels.newInputStream(control));
+                DataOutputStream out = new DataOutputStream(Channels.newOutputStream(control));
+                String reply = in.readUTF();
+                for (int round = 0; reply.startsWith("/need:"); round++) {
+                    List<Integer> need = ChunkMap.parseIndices(reply.substring("/need:".length()), map.count());
+                    if (round == TRANSFER_ROUNDS) {
+                        reply = "[에러] 이미지 전송 실패: 청크 " + ChunkMap.formatIndices(need) + " 전송 실패";
+                        break;
+                    }
+                    if (round == 0 && need.size() < map.count()) {
+                        System.out.println("[이어 올리기] 남은 청크 " + need.size() + "/" + map.count());
+                    }
+                    runStreams(need, chunks -> putChunks(fc, map, file.getName(), chunks));
+                    out.writeUTF("/commit"); // 서버가 모든 청크를 받았으면 /ok, 아니면 빠진 청크 번호
+                    reply = in.readUTF();
+                }
+                System.out.println(reply.equals("/ok") ? "[이미지 전송 완료] " + file.getName() : reply);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("[에러] 이미지 전송 실패: " + e.getMessage());
+        }
+        System.out.print(">> ");
+    }
+
+    // 전송 연결 하나로 청크 업로드 (청크 본문은 파일에서 소켓으로 제로 카피)
+    private void putChunks(FileChannel fc, ChunkMap map, String fileName, List<Integer> chunks) throws IOException {
+        try (SocketChannel channel = openTransfer("put:" + ChunkMap.formatIndices(chunks) + ":" + fileName)) {
+            for (int index : chunks) {
+                long position = map.offset(index);
+                long end = position + map.length(index);
+                while (position < end) {
+                    position += fc.transferTo(position, end - position, channel);
+                }
+            }
+            new DataInputStream(Channels.newInputStream(channel)).readUTF(); // 서버가 모두 처리할 때까지 대기
+        }
+    }
+
+    // 전송 연결 하나로 청크 다운로드 (CRC가 맞는 청크만 기록하고 done에 추가)
+    private void getChunks(FileChannel fc, ChunkMap map, String fileName, List<Integer> chunks, Set<Integer> done)
+            throws IOException {
+        try (SocketChannel channel = openTransfer("get:" + ChunkMap.formatIndices(chunks) + ":" + fileName)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(map.chunkSize());
+            for (int index : chunks) {
+                buffer.clear();
+                buffer.limit(map.length(index));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        return; // 나머지 청크는 다음 회차에 다시 요청
+                    }
+                }
+                buffer.flip();
+                if (ChunkMap.checksum(buffer) != map.crc(index)) {
+                    continue;
+                }
+                long position = map.offset(index);
+                while (buffer.hasRemaining()) {
+                    position += fc.write(buffer, position);
+                }
+                done.add(index);
+            }
+        }
+    }
+
+    // 전송 연결 하나가 맡는 청크 작업
+    private interface StreamTask {
+        void run(List<Integer> chunks) throws IOException;
+    }
+
+    // 청크 목록을 연속 구간으로 나누어 최대 transferStreams개의 연결로 동시에 처리 (실패한 연결의 청크는 다음 회차에 다시 처리)
+    private void runStreams(List<Integer> indices, StreamTask task) throws IOException {
+        if (indices.isEmpty()) {
+            return;
+        }
+        int streams = Math.max(1, Math.min(transferStreams, indices.size()));
+        int perStream = (indices.size() + streams - 1) / streams;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < indices.size(); i += perStream) {
+            List<Integer> chunks = indices.subList(i, Math.min(indices.size(), i + perStream));
+            futures.add(streamExecutor.submit(() -> {
+                task.run(chunks);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.out.println("[전송] 연결 오류: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
     // /download 명령어 처리: 파일 다운로드 요청
     public void downloadImage(String fileName) {
-        send("/download:" + fileName);
-        // 파일 수신은 서버가 /file:파일명:파일크기 메시지를 보내고, handleIncomingFile에서 처리됩니다.
+        if (transferToken == null && binary) {
+            System.out.println("[에러] 전송 연결 토큰을 아직 받지 못했습니다. 잠시 후 다시 시도하세요.");
+            return;
+        }
+        if (transferToken == null) {
+            send("/download:" + fileName);
+            // 파일 수신은 서버가 /file:파일명:... 메시지를 보내고, handleIncomingFile에서 처리됩니다.
+            return;
+        }
+        transferExecutor.execute(() -> { // 별도 연결에서 수신하므로 채팅 수신은 계속됨
+            try {
+                downloadChunks(fileName);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("[에러] 파일 수신 중 오류 발생: " + e.getMessage());
+            }
+            System.out.print(">> ");
+        });
+    }
+
+    // 청크 목록을 받아 남은 청크를 병렬로 내려받음 (downloaded_파일명.part 가 남아 있으면 이어 받기)
+    private void downloadChunks(String fileName) throws IOException {
+        String reply;
+        try (SocketChannel channel = openTransfer("download:" + fileName)) {
+            reply = new DataInputStream(Channels.newInputStream(channel)).readUTF();
+        }
+        int mapStart = reply.startsWith("/file:") ? chunkMapStart(reply) : -1;
+        if (mapStart < 0) {
+            System.out.println(reply);
+            return;
+        }
+        ChunkMap map = ChunkMap.parse(reply.substring(mapStart + 1));
+        String name = reply.substring("/file:".length(), mapStart).trim();
+        File part = new File("downloaded_" + name + ".part");
+        try (FileChannel fc = FileChannel.open(part.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            List<Integer> need = map.missing(fc);
+            System.out.println("서버로부터 파일을 수신합니다: " + name + " (" + map.size() + " bytes"
+                    + (need.size() < map.count() ? ", 남은 청크 " + need.size() + "/" + map.count() : "") + ")");
+            Set<Integer> done = ConcurrentHashMap.newKeySet();
+            for (int round = 0; !need.isEmpty() && round < TRANSFER_ROUNDS; round++) {
+                runStreams(need, chunks -> getChunks(fc, map, name, chunks, done));
+                need.removeIf(done::contains);
+            }
+            if (!need.isEmpty()) {
+                System.out.println("[에러] 파일 수신 실패: 청크 " + ChunkMap.formatIndices(need) + " (다시 요청하면 이어 받음)");
+                return;
+            }
+            fc.truncate(map.size());
+        }
+        Files.move(part.toPath(), new File("downloaded_" + name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("[다운로드 완료] 파일명: downloaded_" + name);
     }
 
     // 사용 가능한 명령어 표시
     private void showHelp() {
         System.out.println("사용 가능한 명령어:");
         System.out.println("/help - 사용 가능한 명령어 목록 보기");
-        System.out.println("/users - 접속 중인 사용자 목록 보기");
+        System.out.println("/users - 접속 중인 사용자 목록 보기 (/users:watch - 입장/퇴장/닉네임 변경 알림 받기, /users:unwatch - 해제)");
+        System.out.println("/join:방이름 - 방으로 이동 (없으면 새로 만듦)");
+        System.out.println("/leave - 로비로 돌아가기");
+        System.out.println("/rooms - 방 목록 보기");
         System.out.println("/rename:새닉네임 - 닉네임 변경");
         System.out.println("/to:닉네임/메시지 - 특정 사용자에게 귓속말 보내기");
         System.out.println("/img:파일경로 - 이미지 전송");
         System.out.println("/quit - 채팅 종료");
-        System.out.println("/logs - 서버 로그 확인");
+        System.out.println("/logs - 서버 로그 확인 (/logs:개수 - 최근 로그, /logs:시작:개수 - 시작 번호부터 페이지 단위 조회)");
+        System.out.println("/search:검색어 - 저장된 메시지 검색 (from:닉네임, since:2024-05-01, until:18:00, page:2 조건 추가 가능)");
     }
 
     // 메인 메서드
@@ -184,9 +576,9 @@ public class ChatClient {
             } else if (input.startsWith("/help")) {
                 chatClient.showHelp();
             } else if (input.startsWith("/users")) {
-                chatClient.send("/users");
+                chatClient.send(input); // /users, /users:watch, /users:unwatch
             } else if (input.startsWith("/logs")) {
-                chatClient.send("/logs");
+                chatClient.send(input); // /logs, /logs:개수, /logs:시작:개수
             } else if (input.startsWith("/rename:")) {
                 chatClient.send(input); // /rename 명령어 전송
             } else if (input.startsWith("/to:")) {
@@ -0,0 +1,560 @@
+package chat.client;
+
+import chat.common.ChunkMap;
+import chat.common.LatencyHistogram;
+import chat.common.Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 화면 없는 부하 발생 클라이언트. 적은 수의 NIO 쓰레드로 수천 개의 연결을 유지하면서
+// 정해진 비율의 명령(채팅, 귓속말, /users, /logs, 이미지 업로드)을 목표 속도로 보내고,
+// 메시지 본문에 넣은 송신 시각으로 서버를 거쳐 다시 받기까지의 지연 시간 백분위를 잰다
+//
+// 실행: java -cp bin chat.client.LoadGenerator [서버주소] [포트]
+// 설정 (시스템 속성):
+//   chat.load.clients   연결 수 (기본 1000)
+//   chat.load.threads   NIO 쓰레드 수 (기본 4)
+//   chat.load.rate      전체 초당 명령 수 (기본 1000)
+//   chat.load.duration  측정 시간(초) (기본 30)
+//   chat.load.ramp      연결을 모두 여는 데 쓰는 시간(초) (기본 5)
+//   chat.load.rooms     연결을 나눠 넣을 방 수 (기본 10, 0이면 모두 로비)
+//   chat.load.mix       명령 비율 (기본 chat=90,to=5,users=2,logs=2,img=1)
+//   chat.load.imageBytes 업로드 이미지 크기 (기본 262144)
+public class LoadGenerator {
+
+    static final String[] OPS = {"chat", "to", "users", "logs", "img"}; // 명령 종류 (chat.load.mix 의 이름)
+    static final int CHAT = 0, TO = 1, USERS = 2, LOGS = 3, IMG = 4;
+    static final String MARK = "lg:"; // 지연 측정용 본문 접두어 (lg:송신시각ns 본문)
+    static final int REPORT_SECONDS = 5; // 진행 상황 출력 주기
+    static final int MAX_IMAGES_IN_FLIGHT = 4; // 동시에 진행하는 이미지 업로드 수
+
+    String serverIP;
+    int portNo;
+    int clients = Integer.getInteger("chat.load.clients", 1000);
+    int threads = Integer.getInteger("chat.load.threads", 4);
+    double rate = Double.parseDouble(System.getProperty("chat.load.rate", "1000"));
+    int duration = Integer.getInteger("chat.load.duration", 30);
+    int rampSeconds = Integer.getInteger("chat.load.ramp", 5);
+    int rooms = Integer.getInteger("chat.load.rooms", 10);
+    int imageBytes = Integer.getInteger("chat.load.imageBytes", 256 * 1024);
+    int[] weights = parseMix(System.getProperty("chat.load.mix", "chat=90,to=5,users=2,logs=2,img=1"));
+    int totalWeight;
+
+    String runId = Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000)); // 이전 실행과 닉네임이 겹치지 않도록
+    String payload = "부하 테스트 메시지입니다"; // 채팅/귓속말 본문
+    Connection[] connections; // 전체 연결 (귓속말 상대 선택용)
+    IoLoop[] loops;
+    volatile boolean running = true;
+
+    // 결과
+    LatencyHistogram chatLatency = new LatencyHistogram(); // 채팅 송신 ~ 같은 방 수신 (나노초)
+    LatencyHistogram whisperLatency = new LatencyHistogram(); // 귓속말 송신 ~ 상대 수신
+    LatencyHistogram imageLatency = new LatencyHistogram(); // 이미지 업로드 시작 ~ 완료
+    LongAdder[] sent = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()}; // 명령별 보낸 수
+    LongAdder received = new LongAdder(); // 받은 프레임 수
+    LongAdder receivedBytes = new LongAdder(); // 받은 바이트 수
+    LongAdder errors = new LongAdder(); // 연결 끊김, 업로드 실패 등
+    LongAdder skipped = new LongAdder(); // 송신 대기열이 밀려 건너뛴 명령 수
+    AtomicInteger connected = new AtomicInteger(); // 로그인까지 끝난 연결 수
+    AtomicInteger failed = new AtomicInteger(); // 연결 실패 수
+    AtomicInteger imagesInFlight = new AtomicInteger();
+    AtomicInteger imageSeq = new AtomicInteger();
+    ExecutorService imageExecutor = Executors.newFixedThreadPool(MAX_IMAGES_IN_FLIGHT, r -> {
+        Thread thread = new Thread(r, "load-image");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 연결 하나의 상태 (소속 IoLoop 쓰레드에서만 읽고 씀, token 제외)
+    static class Connection {
+
+        static final int MAX_PENDING = 64; // 송신 대기 프레임이 이보다 많으면 새 명령을 건너뜀
+
+        int id;
+        String name;
+        SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(16 * 1024); // 받은 바이트 (프레임 단위로 잘라 처리)
+        Queue<ByteBuffer> out = new ArrayDeque<>(); // 아직 다 쓰지 못한 프레임
+        boolean binary; // 협상 응답을 받았는지 여부
+        volatile String token; // 파일 전송 연결 토큰 (로그인 완료 표시)
+    }
+
+    // NIO 쓰레드: 맡은 연결의 송수신과 명령 발생
+    class IoLoop extends Thread {
+
+        Selector selector = Selector.open();
+        Queue<Connection> registrations = new ConcurrentLinkedQueue<>(); // 다른 쓰레드가 연 연결
+        List<Connection> ready = new ArrayList<>(); // 로그인이 끝나 명령을 보낼 수 있는 연결
+        double ratePerLoop; // 이 쓰레드의 초당 명령 수
+        double credit; // 보낼 수 있는 명령 수 (토큰 버킷)
+
+        IoLoop(int index, double ratePerLoop) throws IOException {
+            super("load-io-" + index);
+            setDaemon(true);
+            this.ratePerLoop = ratePerLoop;
+        }
+
+        void add(Connection c) {
+            registrations.add(c);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long last = System.nanoTime();
+            while (running) {
+                try {
+                    selector.select(1);
+                } catch (IOException e) {
+                    break;
+                }
+                Connection c;
+                while ((c = registrations.poll()) != null) {
+                    try {
+                        c.key = c.channel.register(selector, SelectionKey.OP_CONNECT, c);
+                    } catch (IOException e) {
+                        fail(c);
+                    }
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+
+                long now = System.nanoTime();
+                credit = Math.min(credit + ratePerLoop * (now - last) / 1e9, ratePerLoop / 10 + 1); // 밀린 명령을 한꺼번에 보내지 않음
+                last = now;
+                while (credit >= 1 && !ready.isEmpty()) {
+                    credit--;
+                    Connection target = ready.get(ThreadLocalRandom.current().nextInt(ready.size()));
+                    if (target.out.size() > Connection.MAX_PENDING) {
+                        skipped.increment();
+                        continue;
+                    }
+                    sendOp(target, pickOp());
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                close((Connection) key.attachment());
+            }
+        }
+
+        void handle(SelectionKey key) {
+            Connection c = (Connection) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    c.channel.finishConnect();
+                    write(c, textFrame(Protocol.HELLO + Protocol.VERSION + ":" + c.name)); // 협상 (닉네임 포함)
+                    key.interestOps(c.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (key.isWritable()) {
+                    flush(c);
+                }
+                if (key.isReadable()) {
+                    read(c);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (c.token == null) {
+                    fail(c);
+                } else {
+                    errors.increment();
+                    ready.remove(c);
+                    close(c);
+                }
+            }
+        }
+
+        void fail(Connection c) {
+            failed.incrementAndGet();
+            close(c);
+        }
+
+        void read(Connection c) throws IOException {
+            int n = c.channel.read(c.in);
+            if (n < 0) {
+                throw new IOException("서버가 연결을 닫음");
+            }
+            receivedBytes.add(n);
+            ByteBuffer buffer = c.in;
+            buffer.flip();
+            while (true) {
+                if (!c.binary) { // 협상 응답은 텍스트 프레임 (2바이트 길이 + UTF-8)
+                    if (buffer.remaining() < 2 || buffer.remaining() < 2 + (buffer.getShort(buffer.position()) & 0xFFFF)) {
+                        break;
+                    }
+                    byte[] reply = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(reply);
+                    if (!new String(reply, StandardCharsets.UTF_8).equals(Protocol.HELLO + Protocol.VERSION)) {
+                        throw new IOException("서버가 바이너리 프로토콜을 지원하지 않음");
+                    }
+                    c.binary = true;
+                    continue;
+                }
+                int length = Protocol.frameLength(buffer); // 길이 varint 포함
+                if (length == Protocol.INCOMPLETE || buffer.remaining() < length) {
+                    break;
+                }
+                int end = buffer.position() + length;
+                while (buffer.get() < 0) {
+                    // 길이 varint 건너뜀
+                }
+                ByteBuffer frame = buffer.slice();
+                frame.limit(end - buffer.position());
+                buffer.position(end);
+                onFrame(c, frame);
+            }
+            buffer.compact();
+            if (!buffer.hasRemaining()) { // 버퍼보다 긴 프레임
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                c.in = bigger;
+            }
+        }
+
+        void onFrame(Connection c, ByteBuffer frame) throws IOException {
+            received.increment();
+            Protocol.Reader reader = new Protocol.Reader(frame);
+            switch (reader.opcode) {
+                case Protocol.CHAT_MESSAGE:
+                case Protocol.WHISPER_MESSAGE:
+                    reader.readString(); // 보낸 사람
+                    reader.readLong(); // 서버 시각 (밀리초)
+                    String body = reader.readString();
+                    if (body.startsWith(MARK)) {
+                        int space = body.indexOf(' ', MARK.length());
+                        long latency = System.nanoTime() - Long.parseLong(body.substring(MARK.length(), space));
+                        (reader.opcode == Protocol.CHAT_MESSAGE ? chatLatency : whisperLatency).record(latency);
+                    }
+                    break;
+                case Protocol.SESSION: // 로그인 완료
+                    c.token = reader.readString();
+                    if (rooms > 0) {
+                        write(c, new Protocol.Writer(Protocol.JOIN, 16).writeString("load-" + (c.id % rooms)).finish());
+                    }
+                    ready.add(c);
+                    connected.incrementAndGet();
+                    break;
+                case Protocol.NOTICE:
+                    if (c.token == null && reader.readString().startsWith("[서버] 닉네임이 중복")) {
+                        throw new IllegalStateException("닉네임 중복");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // 명령 하나를 만들어 전송
+        void sendOp(Connection c, int op) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            ByteBuffer frame;
+            switch (op) {
+                case TO:
+                    Connection peer = connections[random.nextInt(connections.length)];
+                    if (peer == null || peer == c || peer.token == null) {
+                        op = CHAT; // 상대가 없으면 채팅으로 대신
+                        frame = new Protocol.Writer(Protocol.CHAT, 64).writeString(MARK + System.nanoTime() + " " + payload).finish();
+                    } else {
+                        frame = new Protocol.Writer(Protocol.WHISPER, 80).writeString(peer.name)
+                                .writeString(MARK + System.nanoTime() + " " + payload).finish();
+                    }
+                    break;
+                case USERS:
+                    frame = new Protocol.Writer(Protocol.USERS, 0).finish();
+                    break;
+                case LOGS:
+                    frame = new Protocol.Writer(Protocol.LOGS, 4).writeSigned(-1).writeVarint(20).finish(); // 최근 20줄
+                    break;
+                case IMG:
+                    if (imagesInFlight.incrementAndGet() > MAX_IMAGES_IN_FLIGHT) { // 업로드가 밀리면 건너뜀
+                        imagesInFlight.decrementAndGet();
+                        skipped.increment();
+                        return;
+                    }
+                    String token = c.token;
+                    imageExecutor.execute(() -> {
+                        try {
+                            upload(token);
+                        } finally {
+                            imagesInFlight.decrementAndGet();
+                        }
+                    });
+                    sent[IMG].increment();
+                    return;
+                default:
+                    frame = new Protocol.Writer(Protocol.CHAT, 64).writeString(MARK + System.nanoTime() + " " + payload).finish();
+                    break;
+            }
+            sent[op].increment();
+            try {
+                write(c, frame);
+            } catch (IOException e) {
+                errors.increment();
+                ready.remove(c);
+                close(c);
+            }
+        }
+
+        // 바로 쓸 수 있는 만큼 쓰고 나머지는 쓰기 가능해질 때까지 보관
+        void write(Connection c, ByteBuffer frame) throws IOException {
+            if (c.out.isEmpty() && c.key != null && c.channel.isConnected()) {
+                c.channel.write(frame);
+                if (!frame.hasRemaining()) {
+                    return;
+                }
+                c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            c.out.add(frame);
+        }
+
+        void flush(Connection c) throws IOException {
+            ByteBuffer frame;
+            while ((frame = c.out.peek()) != null) {
+                c.channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                c.out.poll();
+            }
+            c.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void close(Connection c) {
+            try {
+                c.channel.close();
+            } catch (IOException e) {
+                // 무시
+            }
+        }
+    }
+
+    // 협상 전 텍스트 프레임 (writeUTF 형식)
+    static ByteBuffer textFrame(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(text);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    // "chat=90,to=5" 형식의 비율 해석 (없는 명령은 0)
+    static int[] parseMix(String mix) {
+        int[] weights = new int[OPS.length];
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("=");
+            for (int i = 0; i < OPS.length; i++) {
+                if (OPS[i].equals(pair[0])) {
+                    weights[i] = Integer.parseInt(pair[1]);
+                }
+            }
+        }
+        return weights;
+    }
+
+    int pickOp() {
+        int value = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return CHAT;
+    }
+
+    // 파일 전송 연결을 열고 요청 전송 (형식: /data:토큰:요청)
+    SocketChannel openTransfer(String token, String request) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(serverIP, portNo));
+        new DataOutputStream(Channels.newOutputStream(channel)).writeUTF("/data:" + token + ":" + request);
+        return channel;
+    }
+
+    // 이미지 하나 업로드 (내용이 매번 달라지도록 앞 8바이트에 일련번호 기록)
+    void upload(String token) {
+        long start = System.nanoTime();
+        int seq = imageSeq.incrementAndGet();
+        String name = "load-" + runId + "-" + seq + ".png";
+        File file = null;
+        try {
+            file = File.createTempFile("load-image", ".bin");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(imageBytes);
+                raf.writeLong(((long) seq << 16) ^ start);
+            }
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ChunkMap map = ChunkMap.compute(fc);
+                try (SocketChannel control = openTransfer(token, "upload:" + map + ":" + name)) {
+                    DataInputStream in = new DataInputStream(Channels.newInputStream(control));
+                    DataOutputStream out = new DataOutputStream(Channels.newOutputStream(control));
+                    String reply = in.readUTF();
+                    if (reply.startsWith("/need:")) {
+                        List<Integer> need = ChunkMap.parseIndices(reply.substring("/need:".length()), map.count());
+                        try (SocketChannel put = openTransfer(token, "put:" + ChunkMap.formatIndices(need) + ":" + name)) {
+                            for (int index : need) {
+                                long position = map.offset(index);
+                                long end = position + map.length(index);
+                                while (position < end) {
+                                    position += fc.transferTo(position, end - position, put);
+                                }
+                            }
+                            new DataInputStream(Channels.newInputStream(put)).readUTF();
+                        }
+                        out.writeUTF("/commit");
+                        reply = in.readUTF();
+                    }
+                    if (reply.equals("/ok")) {
+                        imageLatency.record(System.nanoTime() - start);
+                    } else {
+                        errors.increment();
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            errors.increment();
+        } finally {
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    public void run() throws IOException, InterruptedException {
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("chat.load.mix 비율 합이 0");
+        }
+        System.out.printf("[부하] %s:%d, 연결 %d개, 쓰레드 %d개, 목표 %.0f/s, %d초, 방 %d개, 비율 %s%n",
+                serverIP, portNo, clients, threads, rate, duration, rooms, describeMix());
+
+        loops = new IoLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new IoLoop(i, rate / threads);
+            loops[i].start();
+        }
+
+        // 연결을 ramp 시간 동안 나누어 열기 (서버 accept 대기열이 넘치지 않도록)
+        connections = new Connection[clients];
+        InetSocketAddress address = new InetSocketAddress(serverIP, portNo);
+        long rampStart = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            long due = rampStart + (long) rampSeconds * 1_000_000_000L * i / clients;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+            Connection c = new Connection();
+            c.id = i;
+            c.name = "lg" + runId + "-" + i;
+            try {
+                c.channel = SocketChannel.open();
+                c.channel.configureBlocking(false);
+                c.channel.connect(address);
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                continue;
+            }
+            connections[i] = c;
+            loops[i % threads].add(c);
+        }
+
+        // 측정
+        long start = System.nanoTime();
+        long startSent = totalSent(), startReceived = received.sum(); // ramp 동안 주고받은 수 제외
+        long lastSent = startSent, lastReceived = startReceived;
+        for (int elapsed = REPORT_SECONDS; elapsed <= duration; elapsed += REPORT_SECONDS) {
+            Thread.sleep(REPORT_SECONDS * 1000L);
+            long totalSent = totalSent(), totalReceived = received.sum();
+            System.out.printf("[부하] %3ds 연결 %d (실패 %d), 송신 %.0f/s, 수신 %.0f/s, 채팅 지연 p50 %.2fms p99 %.2fms, 오류 %d%n",
+                    elapsed, connected.get(), failed.get(),
+                    (totalSent - lastSent) / (double) REPORT_SECONDS, (totalReceived - lastReceived) / (double) REPORT_SECONDS,
+                    chatLatency.percentile(50) / 1e6, chatLatency.percentile(99) / 1e6, errors.sum());
+            lastSent = totalSent;
+            lastReceived = totalReceived;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        running = false;
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+            loop.join(1000);
+        }
+        imageExecutor.shutdownNow();
+        report(seconds, totalSent() - startSent, received.sum() - startReceived);
+    }
+
+    long totalSent() {
+        long total = 0;
+        for (LongAdder adder : sent) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    String describeMix() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OPS.length; i++) {
+            if (weights[i] > 0) {
+                sb.append(sb.length() == 0 ? "" : ",").append(OPS[i]).append('=').append(weights[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    // 최종 결과 출력
+    void report(double seconds, long measuredSent, long measuredReceived) {
+        System.out.println("========== 결과 ==========");
+        System.out.printf("연결: %d/%d (실패 %d), 측정 %.1f초%n", connected.get(), clients, failed.get(), seconds);
+        for (int i = 0; i < OPS.length; i++) {
+            System.out.printf("%-6s %10d회%n", OPS[i], sent[i].sum());
+        }
+        System.out.printf("송신: %.1f/s, 수신: %d 프레임 (%.1f/s, %.1f MB)%n", measuredSent / seconds,
+                received.sum(), measuredReceived / seconds, receivedBytes.sum() / 1048576.0);
+        System.out.printf("건너뜀: %d, 오류: %d%n", skipped.sum(), errors.sum());
+        printLatency("채팅", chatLatency);
+        printLatency("귓속말", whisperLatency);
+        printLatency("이미지", imageLatency);
+    }
+
+    static void printLatency(String name, LatencyHistogram histogram) {
+        if (histogram.count() == 0) {
+            return;
+        }
+        System.out.printf("%s 지연 (%d건): 평균 %.2fms, p50 %.2fms, p90 %.2fms, p99 %.2fms, p99.9 %.2fms, 최대 %.2fms%n",
+                name, histogram.count(), histogram.mean() / 1e6, histogram.percentile(50) / 1e6,
+                histogram.percentile(90) / 1e6, histogram.percentile(99) / 1e6, histogram.percentile(99.9) / 1e6,
+                histogram.max() / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.serverIP = args.length > 0 ? args[0] : "localhost";
+        generator.portNo = args.length > 1 ? Integer.parseInt(args[1]) : 18956;
+        generator.run();
+    }
+}
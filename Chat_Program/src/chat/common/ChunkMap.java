@@ -0,0 +1,208 @@
+package chat.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// 파일을 고정 크기 청크로 나눈 목록과 청크별 CRC32C (전송 재개, 무결성 검사, 병렬 전송에 사용)
+//
+// 문자열 형식: 파일크기:청크크기:crc,crc,... (crc는 16진수)
+// 청크 번호 목록 형식: 0-3,7,9-10 (빈 문자열이면 없음)
+public class ChunkMap {
+
+    public static final int MIN_CHUNK_SIZE = 256 * 1024; // 최소 청크 크기
+    public static final int MAX_CHUNKS = 4096; // 청크 목록이 writeUTF 프레임 하나(64KB)에 들어가도록 제한
+    public static final long MAX_SIZE = (long) MAX_CHUNKS * 64 * 1024 * 1024; // 전송할 수 있는 최대 파일 크기 (청크 최대 64MB)
+
+    final long size; // 파일 크기
+    final int chunkSize; // 청크 크기 (마지막 청크만 더 작을 수 있음)
+    final int[] crcs; // 청크별 CRC32C
+
+    public ChunkMap(long size, int chunkSize, int[] crcs) {
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.crcs = crcs;
+    }
+
+    // 파일 크기에 맞는 청크 크기 (청크 수가 MAX_CHUNKS를 넘지 않도록 키움)
+    public static int chunkSizeFor(long size) {
+        long chunkSize = MIN_CHUNK_SIZE;
+        while ((size + chunkSize - 1) / chunkSize > MAX_CHUNKS) {
+            chunkSize *= 2;
+        }
+        return (int) chunkSize;
+    }
+
+    // 파일 전체를 읽어 청크 목록 계산
+    public static ChunkMap compute(FileChannel fc) throws IOException {
+        long size = fc.size();
+        int chunkSize = chunkSizeFor(size);
+        int count = (int) ((size + chunkSize - 1) / chunkSize);
+        ChunkMap map = new ChunkMap(size, chunkSize, new int[count]);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        for (int i = 0; i < count; i++) {
+            map.crcs[i] = checksum(fc, map.offset(i), map.length(i), buffer);
+        }
+        return map;
+    }
+
+    // 파일의 offset 위치부터 length 바이트의 CRC32C (파일이 짧으면 기대값과 다른 값을 반환)
+    public static int checksum(FileChannel fc, long offset, int length, ByteBuffer buffer) throws IOException {
+        CRC32C crc = new CRC32C();
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = fc.read(buffer, position);
+            if (read < 0) {
+                return ~(int) crc.getValue(); // 파일 끝 (받지 못한 청크)
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return (int) crc.getValue();
+    }
+
+    // 메모리에 있는 청크 데이터의 CRC32C
+    public static int checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    // 파일에 이미 올바르게 기록된 청크를 제외한 나머지 청크 번호 (전송 재개 지점)
+    public List<Integer> missing(FileChannel fc) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        long existing = fc.size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        for (int i = 0; i < crcs.length; i++) {
+            if (offset(i) + length(i) > existing || checksum(fc, offset(i), length(i), buffer) != crcs[i]) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public int count() {
+        return crcs.length;
+    }
+
+    public int crc(int index) {
+        return crcs[index];
+    }
+
+    // 청크 시작 위치
+    public long offset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    // 청크 길이
+    public int length(int index) {
+        return (int) Math.min(chunkSize, size - offset(index));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ChunkMap)) {
+            return false;
+        }
+        ChunkMap other = (ChunkMap) o;
+        return size == other.size && chunkSize == other.chunkSize && Arrays.equals(crcs, other.crcs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(crcs);
+    }
+
+    // 파일크기:청크크기:crc,crc,...
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(24 + crcs.length * 9);
+        sb.append(size).append(':').append(chunkSize).append(':');
+        for (int i = 0; i < crcs.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(Integer.toHexString(crcs[i]));
+        }
+        return sb.toString();
+    }
+
+    // toString 형식의 문자열 해석 (형식이 틀리면 IllegalArgumentException)
+    public static ChunkMap parse(String text) {
+        String[] parts = text.split(":", 3);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("청크 목록 형식 오류");
+        }
+        long size = Long.parseLong(parts[0]);
+        int chunkSize = Integer.parseInt(parts[1]);
+        if (size < 0 || size > MAX_SIZE || chunkSize != chunkSizeFor(size)) { // 받는 쪽이 청크 크기를 믿고 버퍼를 잡지 않도록
+            throw new IllegalArgumentException("청크 크기 오류");
+        }
+        int count = (int) ((size + chunkSize - 1) / chunkSize);
+        String[] values = parts[2].isEmpty() ? new String[0] : parts[2].split(",");
+        if (values.length != count) {
+            throw new IllegalArgumentException("청크 수 불일치");
+        }
+        int[] crcs = new int[count];
+        for (int i = 0; i < count; i++) {
+            crcs[i] = Integer.parseUnsignedInt(values[i], 16);
+        }
+        return new ChunkMap(size, chunkSize, crcs);
+    }
+
+    // 청크 번호 목록을 구간 형식으로 (예: [0,1,2,3,7] -> 0-3,7)
+    public static String formatIndices(List<Integer> indices) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < indices.size(); i++) {
+            int start = indices.get(i);
+            int end = start;
+            while (i + 1 < indices.size() && indices.get(i + 1) == end + 1) {
+                end = indices.get(++i);
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(start);
+            if (end > start) {
+                sb.append('-').append(end);
+            }
+        }
+        return sb.toString();
+    }
+
+    // 구간 형식의 청크 번호 목록 해석 (count 범위를 벗어나면 IllegalArgumentException)
+    public static List<Integer> parseIndices(String text, int count) {
+        List<Integer> result = new ArrayList<>();
+        if (text.isEmpty()) {
+            return result;
+        }
+        for (String range : text.split(",")) {
+            int dash = range.indexOf('-');
+            int start = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+            int end = dash < 0 ? start : Integer.parseInt(range.substring(dash + 1));
+            if (start < 0 || end < start || end >= count) {
+                throw new IllegalArgumentException("청크 번호 범위 오류: " + range);
+            }
+            for (int i = start; i <= end; i++) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+}
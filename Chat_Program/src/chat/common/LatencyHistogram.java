@@ -0,0 +1,85 @@
+package chat.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// 지연 시간 히스토그램 (HdrHistogram 방식). 값의 크기를 2의 거듭제곱 구간으로 나누고 구간마다 16칸을 두어
+// 나노초부터 수 시간까지 고정된 메모리(960칸)로 약 6% 오차 안에서 백분위를 구한다. 기록은 락 없이 원자 연산 하나
+public class LatencyHistogram {
+
+    static final int SUB_BITS = 4; // 구간마다 2^4 = 16칸
+    static final int SUB_COUNT = 1 << SUB_BITS;
+    static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS); // 칸별 기록 수
+    LongAdder count = new LongAdder(); // 전체 기록 수
+    LongAdder sum = new LongAdder(); // 전체 합 (평균 계산용)
+    AtomicLong max = new AtomicLong(); // 최댓값
+
+    // 값 하나 기록 (음수는 0으로)
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    // 값이 들어갈 칸 번호
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // 최상위 비트 위치 (SUB_BITS 이상)
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1); // 최상위 비트 다음 4비트
+        return SUB_COUNT + (magnitude - SUB_BITS) * SUB_COUNT + sub;
+    }
+
+    // 칸의 가장 작은 값
+    static long lowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int magnitude = (index - SUB_COUNT) / SUB_COUNT + SUB_BITS;
+        int sub = (index - SUB_COUNT) % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << (magnitude - SUB_BITS);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    // 백분위 값 (percentile: 0~100). 해당 칸의 가장 큰 값을 반환하므로 실제 값보다 작게 보고하지 않음
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return i + 1 < BUCKETS ? Math.min(max.get(), lowerBound(i + 1) - 1) : max.get();
+            }
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,260 @@
+package chat.common;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// 바이너리 프로토콜 (버전 1)
+//
+// 접속 직후 클라이언트가 텍스트 프레임 /proto:1:닉네임 을 보내고, 서버가 /proto:1 로 응답하면
+// 그 뒤로는 양방향 모두 바이너리 프레임을 사용한다. 서버가 /proto:0 으로 응답하거나 첫 프레임이 닉네임이면 기존 텍스트(writeUTF) 프로토콜.
+//
+// 프레임: varint 길이 | opcode(1바이트) | 필드...
+// 필드: 문자열 = varint 바이트 수 + UTF-8, 시각 = 8바이트 epoch millis, 정수 = varint (음수가 올 수 있으면 zigzag)
+public final class Protocol {
+
+    public static final int VERSION = 1; // 지원하는 바이너리 프로토콜 버전
+    public static final String HELLO = "/proto:"; // 프로토콜 협상 프레임 접두어
+    public static final int MAX_FRAME = 16 * 1024 * 1024; // 프레임 최대 크기 (받는 쪽이 이보다 긴 길이는 잘못된 프레임으로 처리)
+    public static final int MAX_HEADER = 5; // 길이 varint 최대 바이트 수
+    public static final int INCOMPLETE = -1; // frameLength: 길이 varint가 아직 다 오지 않음
+
+    // 클라이언트 -> 서버
+    public static final byte CHAT = 0x01; // 본문
+    public static final byte WHISPER = 0x02; // 수신자, 본문
+    public static final byte RENAME = 0x03; // 새 닉네임
+    public static final byte USERS = 0x04; // 접속자 목록 요청
+    public static final byte LOGS = 0x05; // 시작 위치(zigzag, 음수면 최근), 개수
+    public static final byte JOIN = 0x06; // 방 이름
+    public static final byte LEAVE = 0x07; // 로비로 돌아가기
+    public static final byte ROOMS = 0x08; // 방 목록 요청
+    public static final byte SEARCH = 0x09; // 검색어와 조건 (/search: 뒤의 문자열)
+    public static final byte WATCH_USERS = 0x0A; // 접속자 변경 구독 여부 (1: 구독, 0: 해제)
+
+    // 서버 -> 클라이언트
+    public static final byte CHAT_MESSAGE = 0x41; // 보낸 사람, 시각, 본문
+    public static final byte WHISPER_MESSAGE = 0x42; // 보낸 사람, 시각, 본문
+    public static final byte NOTICE = 0x43; // 서버 안내 문장 (그대로 출력)
+    public static final byte SESSION = 0x44; // 파일 전송 연결 토큰
+    public static final byte USER_EVENT = 0x45; // 접속자 목록 버전, 종류(0 입장, 1 퇴장, 2 닉네임 변경), 닉네임, 새 닉네임
+    public static final byte RECONNECT = 0x46; // 서버 종료 예정, 다시 접속하기 전에 기다릴 시간(ms)
+
+    private Protocol() {
+    }
+
+    // 버퍼 앞부분의 프레임 전체 길이 (길이 varint 포함). varint가 아직 다 오지 않았으면 INCOMPLETE
+    // 길이가 MAX_HEADER바이트를 넘거나 본문이 비었거나 MAX_FRAME보다 길면 잘못된 프레임 (연결을 끊어야 함)
+    public static int frameLength(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        int position = buffer.position();
+        for (int i = 0; i < MAX_HEADER; i++) {
+            if (position + i >= buffer.limit()) {
+                return INCOMPLETE;
+            }
+            byte b = buffer.get(position + i);
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return i + 1 + checkLength(value);
+            }
+        }
+        throw new IOException("잘못된 프레임 길이: varint가 " + MAX_HEADER + "바이트를 넘음");
+    }
+
+    // 본문 길이 확인 (1 ~ MAX_FRAME)
+    static int checkLength(long length) throws IOException {
+        if (length <= 0 || length > MAX_FRAME) {
+            throw new IOException("잘못된 프레임 길이: " + length);
+        }
+        return (int) length;
+    }
+
+    // 스트림에서 프레임 하나를 읽음 (블로킹 모드)
+    public static ByteBuffer readFrame(DataInputStream in) throws IOException {
+        long value = 0;
+        int header = 0;
+        int b;
+        do {
+            if (header == MAX_HEADER) {
+                throw new IOException("잘못된 프레임 길이: varint가 " + MAX_HEADER + "바이트를 넘음");
+            }
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << (7 * header++);
+        } while ((b & 0x80) != 0);
+        int length = checkLength(value);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return ByteBuffer.wrap(body);
+    }
+
+    // varint 크기
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    // 프레임 작성기. 길이를 모르는 상태로 본문을 쓰고, finish()에서 앞쪽 예약 공간에 길이를 채움
+    public static class Writer {
+
+        ByteBuffer buffer;
+
+        public Writer(byte opcode, int sizeHint) {
+            buffer = ByteBuffer.allocate(MAX_HEADER + 1 + sizeHint);
+            buffer.position(MAX_HEADER);
+            buffer.put(opcode);
+        }
+
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+
+        public Writer writeVarint(int value) {
+            ensure(MAX_HEADER);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+            return this;
+        }
+
+        // 음수도 짧게 기록 (zigzag)
+        public Writer writeSigned(int value) {
+            return writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        public Writer writeLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        // UTF-8 문자열 (중간 byte[] 없이 버퍼에 바로 기록, 짝이 없는 서로게이트는 getBytes처럼 '?')
+        public Writer writeString(String value) {
+            int length = utf8Length(value);
+            writeVarint(length);
+            ensure(length);
+            byte[] array = buffer.array();
+            int p = buffer.arrayOffset() + buffer.position();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    array[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    array[p++] = (byte) (0xC0 | (c >> 6));
+                    array[p++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, value.charAt(++i));
+                        array[p++] = (byte) (0xF0 | (cp >> 18));
+                        array[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        array[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        array[p++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        array[p++] = '?';
+                    }
+                } else {
+                    array[p++] = (byte) (0xE0 | (c >> 12));
+                    array[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    array[p++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            buffer.position(p - buffer.arrayOffset());
+            return this;
+        }
+
+        // UTF-8 인코딩 바이트 수
+        static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += Character.isSurrogate(c) ? 1 : 3;
+                }
+            }
+            return length;
+        }
+
+        // 완성된 프레임 (읽기 전용)
+        public ByteBuffer finish() {
+            int length = buffer.position() - MAX_HEADER;
+            int start = MAX_HEADER - varintSize(length);
+            int end = buffer.position();
+            buffer.position(start);
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+            buffer.limit(end).position(start);
+            return buffer.slice().asReadOnlyBuffer();
+        }
+    }
+
+    // 프레임 해석기. 버퍼는 길이 varint를 뺀 opcode부터 시작
+    public static class Reader {
+
+        ByteBuffer buffer;
+        public final byte opcode;
+
+        public Reader(ByteBuffer body) {
+            this.buffer = body;
+            this.opcode = body.get();
+        }
+
+        public int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("잘못된 varint");
+        }
+
+        public int readSigned() {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public long readLong() {
+            return buffer.getLong();
+        }
+
+        public String readString() {
+            int length = readVarint();
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("문자열 길이 초과");
+            }
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+    }
+}
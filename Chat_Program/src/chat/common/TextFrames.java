@@ -0,0 +1,127 @@
+package chat.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// 텍스트 프로토콜의 긴 메시지 처리
+//
+// writeUTF 프레임은 인코딩 후 65,535바이트까지만 담을 수 있으므로, 그보다 긴 문자열은 여러 프레임으로 나누어 보낸다.
+// 마지막 조각을 뺀 나머지 조각은 /cont: 로 시작하고, 받는 쪽은 /cont: 로 시작하지 않는 프레임이 올 때까지 이어 붙인다.
+// 64KB 이내의 문자열은 지금과 똑같이 프레임 하나로 보내므로 이전 클라이언트와도 호환된다
+public final class TextFrames {
+
+    public static final String CONTINUATION = "/cont:"; // 이어지는 조각 표시
+    public static final int MAX_TEXT = Protocol.MAX_FRAME; // 이어 붙인 메시지의 최대 문자 수
+    static final int PIECE_CHARS = 16 * 1024; // 조각 하나의 최대 문자 수 (문자당 3바이트여도 64KB 이내)
+    static final int MAX_UTF = 65535; // writeUTF 한 프레임의 최대 바이트 수
+
+    private TextFrames() {
+    }
+
+    // 문자열 전송 (64KB를 넘으면 이어지는 프레임으로 나눔)
+    public static void write(DataOutputStream out, String text) throws IOException {
+        if (text.length() <= MAX_UTF / 3 || utfLength(text) <= MAX_UTF) {
+            if (!text.startsWith(CONTINUATION)) {
+                out.writeUTF(text);
+                return;
+            }
+        }
+        int start = 0;
+        while (text.length() - start > PIECE_CHARS) {
+            int end = start + PIECE_CHARS;
+            if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                end--; // 서로게이트 쌍은 나누지 않음
+            }
+            out.writeUTF(CONTINUATION + text.substring(start, end));
+            start = end;
+        }
+        if (text.startsWith(CONTINUATION, start)) {
+            // 마지막 조각이 표시와 같은 문자열로 시작하면 한 글자를 앞 조각으로 옮겨 이어지는 조각으로 오해하지 않게 함
+            out.writeUTF(CONTINUATION + text.charAt(start));
+            start++;
+        }
+        out.writeUTF(text.substring(start));
+    }
+
+    // 문자열을 write()와 같은 프레임으로 인코딩 (읽기 전용, 받는 사람이 여럿이면 duplicate()로 공유)
+    // 프레임 하나에 들어가는 문자열은 길이를 센 뒤 정확한 크기의 배열 하나에 바로 기록한다
+    public static ByteBuffer encode(String text) {
+        int length = text.length() <= MAX_UTF ? utfLength(text) : MAX_UTF + 1;
+        if (length > MAX_UTF || text.startsWith(CONTINUATION)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(text.length() + 64);
+            try {
+                write(new DataOutputStream(bos), text); // 이어지는 프레임 여러 개
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // 메모리 스트림이므로 발생하지 않음
+            }
+            return ByteBuffer.wrap(bos.toByteArray()).asReadOnlyBuffer();
+        }
+        byte[] frame = new byte[length + 2];
+        frame[0] = (byte) (length >>> 8);
+        frame[1] = (byte) length;
+        int p = 2;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                frame[p++] = (byte) c;
+            } else if (c <= 0x07FF) {
+                frame[p++] = (byte) (0xC0 | (c >> 6));
+                frame[p++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                frame[p++] = (byte) (0xE0 | (c >> 12));
+                frame[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                frame[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    // 문자열 수신 (이어지는 프레임을 모두 받아 합침)
+    public static String read(DataInputStream in) throws IOException {
+        Assembler assembler = new Assembler();
+        String text;
+        while ((text = assembler.add(in.readUTF())) == null) {
+            // 다음 조각 수신
+        }
+        return text;
+    }
+
+    // UTF-8(수정된 UTF-8) 인코딩 바이트 수
+    public static int utfLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    // 받은 프레임을 차례로 넣으면 메시지가 완성될 때 반환 (NIO처럼 프레임 단위로 받는 곳에서 사용)
+    public static class Assembler {
+
+        StringBuilder pending; // 이어 붙이는 중인 조각
+
+        // 완성된 메시지, 아직 조각이 남았으면 null
+        public String add(String frame) throws IOException {
+            if (frame.startsWith(CONTINUATION)) {
+                if (pending == null) {
+                    pending = new StringBuilder();
+                }
+                pending.append(frame, CONTINUATION.length(), frame.length());
+                if (pending.length() > MAX_TEXT) {
+                    throw new IOException("메시지가 너무 깁니다: " + pending.length());
+                }
+                return null;
+            }
+            if (pending == null) {
+                return frame;
+            }
+            String text = pending.append(frame).toString();
+            pending = null;
+            return text;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package chat.common;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+// 초 단위 시각 문자열 캐시. 같은 초에 보낸 메시지들은 포맷하지 않고 마지막 결과를 공유한다
+// (항목을 통째로 바꾸므로 여러 쓰레드가 락 없이 사용. 동시에 바꾸면 한쪽이 이기지만 둘 다 올바른 값)
+public final class TimeCache {
+
+    static final class Entry {
+        final long second; // epoch 초
+        final String text; // 그 초의 문자열
+
+        Entry(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    final DateTimeFormatter format; // 초보다 작은 단위를 출력하지 않는 형식이어야 함
+    volatile Entry last = new Entry(Long.MIN_VALUE, "");
+
+    public TimeCache(DateTimeFormatter format) {
+        this.format = format;
+    }
+
+    public String format(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        Entry entry = last;
+        if (entry.second == second) {
+            return entry.text;
+        }
+        String text = format.format(Instant.ofEpochMilli(millis));
+        last = new Entry(second, text);
+        return text;
+    }
+}
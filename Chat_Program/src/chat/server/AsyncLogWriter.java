@@ -0,0 +1,138 @@
+package chat.server;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// 로그 파일 전용 쓰레드. 여러 쓰레드가 락 없이 큐에 넣고, 한 쓰레드가 모아서 한 번에 기록한다
+// (메시지 저장소가 있으면 같은 배치로 저장소에도 기록)
+public class AsyncLogWriter {
+
+    ConcurrentLinkedQueue<MessageStore.Record> queue = new ConcurrentLinkedQueue<>(); // 락 없는 다중 생산자 큐
+    AtomicInteger pending = new AtomicInteger(); // 아직 파일에 기록되지 않은 로그 수
+    FileOutputStream fos; // fsync용 원본 스트림
+    Writer writer; // 버퍼링된 기록기
+    MessageStore store; // 메시지 저장소 (없으면 null)
+    SearchIndex index; // 저장소 메시지 검색 색인 (없으면 null, 저장소에 추가할 때 함께 갱신)
+    int sinceTrim; // 마지막으로 색인에서 지워진 메시지를 정리한 뒤 추가한 수
+    int batchSize; // 이 수만큼 모이면 즉시 기록
+    long flushNanos; // 이 시간이 지나면 모인 만큼 기록
+    boolean fsync; // 기록 후 디스크 동기화 여부
+    Thread thread; // 기록 쓰레드
+    volatile boolean running = true;
+    long lastTimestamp; // 마지막으로 파일에 쓴 로그가 추가된 시각 (기록 쓰레드만 사용)
+    volatile long lagMillis; // 마지막 기록에서 로그 추가부터 기록까지 걸린 시간
+
+    public AsyncLogWriter(String fileName, MessageStore store, int batchSize, long flushMillis, boolean fsync)
+            throws IOException {
+        this(fileName, store, null, batchSize, flushMillis, fsync);
+    }
+
+    public AsyncLogWriter(String fileName, MessageStore store, SearchIndex index, int batchSize, long flushMillis,
+            boolean fsync) throws IOException {
+        this.store = store;
+        this.index = index;
+        this.fos = new FileOutputStream(fileName, true);
+        this.writer = new BufferedWriter(new OutputStreamWriter(fos), 64 * 1024);
+        this.batchSize = batchSize;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.fsync = fsync;
+        thread = new Thread(this::run, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 로그 한 줄 추가 (호출한 쓰레드는 I/O를 하지 않음)
+    public void append(long timestamp, byte type, String sender, String room, String line) {
+        if (!running) {
+            return;
+        }
+        queue.add(new MessageStore.Record(-1, timestamp, type, sender, room, line));
+        if (pending.incrementAndGet() >= batchSize) {
+            LockSupport.unpark(thread); // 배치가 찼으니 바로 기록 (밀린 동안은 계속 깨움)
+        }
+    }
+
+    // 아직 기록되지 않은 로그 수 (기록 지연 정도)
+    public int pending() {
+        return pending.get();
+    }
+
+    void run() {
+        long lastFlush = System.nanoTime();
+        int unflushed = 0;
+        while (running || !queue.isEmpty()) {
+            MessageStore.Record record;
+            try {
+                while ((record = queue.poll()) != null) {
+                    writer.write(record.text);
+                    lastTimestamp = record.timestamp;
+                    writer.write(System.lineSeparator());
+                    if (store != null) {
+                        long seq = store.append(record.timestamp, record.type, record.sender, record.room, record.text);
+                        if (index != null) {
+                            index.add(seq, record.timestamp, record.type, record.sender, record.room, record.text);
+                            if (++sinceTrim >= 4096) {
+                                index.trim(store.firstSeq()); // 삭제된 세그먼트의 메시지를 색인에서도 제거
+                                sinceTrim = 0;
+                            }
+                        }
+                    }
+                    unflushed++;
+                    if (unflushed >= batchSize) {
+                        break;
+                    }
+                }
+                long now = System.nanoTime();
+                if (unflushed > 0 && (unflushed >= batchSize || now - lastFlush >= flushNanos || !running)) {
+                    commit(unflushed);
+                    unflushed = 0;
+                    lastFlush = now;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (queue.isEmpty() && running) {
+                LockSupport.parkNanos(flushNanos);
+            }
+        }
+        try {
+            commit(unflushed);
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // 모인 로그를 한 번에 기록 (group commit)
+    void commit(int count) throws IOException {
+        writer.flush();
+        if (fsync) {
+            fos.getChannel().force(false);
+        }
+        if (store != null) {
+            store.flush(fsync); // 저장소에 기록하여 /logs에서 읽을 수 있게 함
+        }
+        pending.addAndGet(-count);
+        if (count > 0) {
+            lagMillis = System.currentTimeMillis() - lastTimestamp;
+        }
+    }
+
+    // 남은 로그를 모두 기록하고 종료
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
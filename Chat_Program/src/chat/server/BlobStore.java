@@ -0,0 +1,274 @@
+package chat.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 업로드 이미지 저장소. 내용의 SHA-256을 파일 이름으로 저장해 같은 이미지는 한 번만 저장하고,
+// 많이 받는 이미지는 크기 제한이 있는 LRU 캐시(힙 밖의 다이렉트 버퍼)에 올려 디스크를 다시 읽지 않는다
+//
+// 디렉터리 구성: blobs/해시 (이미지 본문), incoming/[닉네임해시-]파일명.part (받는 중), names.txt (해시 파일명 목록, 추가 기록),
+// names.bin (정상 종료 시 names.txt를 압축한 목록. 시작할 때 이것을 먼저 읽고 그 뒤에 추가된 names.txt만 읽음)
+public class BlobStore {
+
+    File dir; // 저장소 디렉터리
+    File blobs; // 이미지 본문 디렉터리
+    File incoming; // 받는 중인 파일 디렉터리
+    Map<String, String> names = new ConcurrentHashMap<>(); // 파일명 -> 해시
+    Writer namesLog; // names.txt 기록기
+    long cacheLimit; // 캐시 최대 크기 (bytes)
+    long maxEntry; // 캐시에 올릴 파일 하나의 최대 크기
+    long cacheBytes; // 현재 캐시 크기
+    LinkedHashMap<String, ByteBuffer> cache = new LinkedHashMap<>(16, 0.75f, true); // 접근 순서 = LRU 순서
+    Map<String, FutureTask<ByteBuffer>> loading = new ConcurrentHashMap<>(); // 읽는 중인 파일 (동시 요청은 한 번만 읽음)
+    ReentrantLock lock = new ReentrantLock(); // 캐시와 파일명 등록 보호
+
+    public BlobStore(File dir, long cacheLimit) throws IOException {
+        this.dir = dir;
+        this.blobs = new File(dir, "blobs");
+        this.incoming = new File(dir, "incoming");
+        this.cacheLimit = cacheLimit;
+        this.maxEntry = cacheLimit / 4; // 큰 파일 하나가 캐시를 모두 밀어내지 않도록
+        Files.createDirectories(blobs.toPath());
+        Files.createDirectories(incoming.toPath());
+        File namesFile = new File(dir, "names.txt");
+        loadNames(new File(dir, "names.bin"));
+        if (namesFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(namesFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        names.put(line.substring(tab + 1), line.substring(0, tab));
+                    }
+                }
+            }
+        }
+        namesLog = new OutputStreamWriter(new FileOutputStream(namesFile, true), StandardCharsets.UTF_8);
+    }
+
+    // 압축된 파일명 목록 읽기 (해시는 32바이트 그대로 저장)
+    void loadNames(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            byte[] hash = new byte[32];
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                in.readFully(hash);
+                names.put(name, hex(hash));
+            }
+        }
+    }
+
+    // 파일명 목록을 names.bin 하나로 압축하고 names.txt를 비움 (같은 이름이 여러 번 기록된 줄도 정리됨)
+    void compactNames() throws IOException {
+        File tmp = new File(dir, "names.bin.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(names.size());
+            for (Map.Entry<String, String> entry : names.entrySet()) {
+                out.writeUTF(entry.getKey());
+                for (int i = 0; i < 64; i += 2) {
+                    out.write(Integer.parseInt(entry.getValue().substring(i, i + 2), 16));
+                }
+            }
+        }
+        Files.move(tmp.toPath(), new File(dir, "names.bin").toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        new FileOutputStream(new File(dir, "names.txt")).close(); // names.bin으로 옮겼으므로 비움
+    }
+
+    // 오래된 .part 파일 삭제 (이어 받기를 기다리다 버려진 업로드). 삭제한 수를 반환
+    public int removeStaleParts(long maxAgeMillis) {
+        File[] parts = incoming.listFiles((d, name) -> name.endsWith(".part"));
+        int removed = 0;
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        for (File part : parts != null ? parts : new File[0]) {
+            if (part.lastModified() < cutoff && part.delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // 받는 중인 파일
+    public File partFile(String fileName) {
+        return new File(incoming, fileName + ".part");
+    }
+
+    // 사용자별로 받는 중인 파일 (다른 사용자가 같은 이름의 파일을 올려도 겹치지 않음)
+    public File partFile(String owner, String fileName) {
+        return partFile(sha256(owner).substring(0, 16) + "-" + fileName);
+    }
+
+    // 다 받은 파일을 저장하고 다운로드에 쓸 파일명을 반환
+    // 같은 내용이 이미 있으면 새 파일은 지우고, 같은 이름의 다른 내용이 있으면 이름-해시앞8자리 로 등록
+    public String put(File part, String fileName) throws IOException {
+        String hash = sha256(part);
+        File blob = new File(blobs, hash);
+        lock.lock();
+        try {
+            if (blob.exists()) {
+                Files.delete(part.toPath()); // 중복 업로드
+            } else {
+                Files.move(part.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            String name = fileName;
+            String existing = names.get(name);
+            if (existing != null && !existing.equals(hash)) {
+                int dot = fileName.lastIndexOf('.');
+                String suffix = "-" + hash.substring(0, 8);
+                name = dot > 0 ? fileName.substring(0, dot) + suffix + fileName.substring(dot) : fileName + suffix;
+            }
+            if (!hash.equals(names.put(name, hash))) {
+                namesLog.write(hash + "\t" + name + "\n");
+                namesLog.flush();
+            }
+            return name;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 파일명에 해당하는 저장 파일 (이전 방식의 server_파일명 도 찾음). 없으면 null
+    public File file(String fileName) {
+        String hash = names.get(fileName);
+        File file = hash != null ? new File(blobs, hash) : new File("server_" + fileName);
+        return file.exists() ? file : null;
+    }
+
+    // 캐시된 파일 본문 (읽기 전용, 호출자마다 독립된 위치). 캐시하기에 너무 크면 null
+    public ByteBuffer cached(File file) throws IOException {
+        long size = file.length();
+        if (size > maxEntry || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        String key = file.getPath();
+        lock.lock();
+        try {
+            ByteBuffer data = cache.get(key);
+            if (data != null) {
+                return data.duplicate();
+            }
+        } finally {
+            lock.unlock();
+        }
+        FutureTask<ByteBuffer> task = loading.computeIfAbsent(key, k -> new FutureTask<>(() -> load(file)));
+        task.run(); // 먼저 온 요청만 실제로 읽고, 나머지는 아래 get()에서 결과를 기다림
+        ByteBuffer data;
+        try {
+            data = task.get();
+            lock.lock();
+            try {
+                if (cache.putIfAbsent(key, data) == null) {
+                    cacheBytes += data.capacity();
+                    Iterator<ByteBuffer> it = cache.values().iterator(); // 가장 오래 쓰지 않은 것부터 제거
+                    while (cacheBytes > cacheLimit && it.hasNext()) {
+                        cacheBytes -= it.next().capacity();
+                        it.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            // 캐시에 넣은 뒤에 제거: 그 사이에 온 요청은 캐시나 진행 중인 작업 중 하나를 반드시 보므로 다시 읽지 않음
+            loading.remove(key, task);
+        }
+        return data.duplicate();
+    }
+
+    // 파일 전체를 다이렉트 버퍼로 읽음
+    ByteBuffer load(File file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocateDirect((int) fc.size());
+            while (data.hasRemaining()) {
+                if (fc.read(data, data.position()) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+            return data.asReadOnlyBuffer();
+        }
+    }
+
+    // 파일 내용의 SHA-256 (16진수)
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (fc.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    // 문자열(UTF-8)의 SHA-256 (16진수)
+    static String sha256(String text) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            namesLog.close();
+            compactNames(); // 다음 시작 때 텍스트 목록을 다시 읽지 않도록
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package chat.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 최근 로그만 보관하는 고정 크기 원형 버퍼 (추가 O(1), 오래된 항목은 덮어씀)
+// 항목 번호는 추가된 순서(total 기준)라서 오래된 항목이 덮어써져도 같은 항목은 같은 번호를 유지한다
+public class ChatHistory {
+
+    // 한 번의 잠금으로 읽은 페이지 (보관 범위와 페이지 위치가 같은 시점의 값)
+    public static class Page {
+        public final long first; // 보관 중인 가장 오래된 번호
+        public final long end; // 마지막 번호 + 1
+        public final long from; // 페이지 첫 항목 번호
+        public final List<String> lines;
+
+        Page(long first, long end, long from, List<String> lines) {
+            this.first = first;
+            this.end = end;
+            this.from = from;
+            this.lines = lines;
+        }
+    }
+
+    String[] entries; // 원형 버퍼
+    int head; // 가장 오래된 항목의 위치
+    int size; // 현재 보관 중인 항목 수
+    long total; // 지금까지 추가된 전체 항목 수
+    ReentrantLock lock = new ReentrantLock();
+
+    public ChatHistory(int capacity) {
+        entries = new String[capacity];
+    }
+
+    // 항목 추가 (가득 차면 가장 오래된 항목을 덮어씀)
+    public void add(String entry) {
+        lock.lock();
+        try {
+            entries[(head + size) % entries.length] = entry;
+            if (size < entries.length) {
+                size++;
+            } else {
+                head = (head + 1) % entries.length;
+            }
+            total++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 지금까지 추가된 항목 수를 end로 맞춤 (저장소에서 복원한 뒤 항목 번호를 저장소 번호와 같게)
+    public void renumber(long end) {
+        lock.lock();
+        try {
+            total = Math.max(end, size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 가장 오래된 항목 기준 offset 위치부터 count개 복사. offset이 음수면 최근 count개
+    public List<String> range(int offset, int count) {
+        lock.lock();
+        try {
+            return copy(offset < 0 ? Math.max(0, size - count) : Math.min(offset, size), count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // from 번호부터 count개 (이미 덮어쓴 번호면 가장 오래된 항목부터). from이 음수면 최근 count개
+    public Page page(long from, int count) {
+        lock.lock();
+        try {
+            long first = total - size;
+            int offset = from < 0 ? Math.max(0, size - count) : (int) Math.min(size, Math.max(0, from - first));
+            return new Page(first, total, first + offset, copy(offset, count));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<String> copy(int offset, int count) {
+        int end = (int) Math.min(size, (long) offset + count);
+        List<String> result = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            result.add(entries[(head + i) % entries.length]);
+        }
+        return result;
+    }
+}
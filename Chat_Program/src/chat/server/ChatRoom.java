@@ -0,0 +1,141 @@
+package chat.server;
+
+import chat.common.LatencyHistogram;
+import chat.common.Protocol;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 채팅방 하나. 방마다 참여자 목록, 최근 대화, 브로드캐스트 쓰레드를 따로 가지므로
+// 한 방의 트래픽이 다른 방의 락이나 쓰레드를 건드리지 않는다
+public class ChatRoom {
+
+    static final ClientService[] EMPTY = new ClientService[0];
+
+    String name; // 방 이름
+    ChatHistory history; // 이 방의 최근 대화
+    ExecutorService broadcaster; // 이 방 전용 브로드캐스트 쓰레드 (메시지 순서 유지)
+    volatile ClientService[] members = EMPTY; // 참여자 스냅샷 (입장/퇴장 때만 교체)
+    ReentrantLock lock = new ReentrantLock(); // 이 방의 참여자 변경만 보호
+
+    LongAdder messages = new LongAdder(); // 브로드캐스트한 메시지 수
+    LongAdder fanoutNanos = new LongAdder(); // 전체 fan-out 소요 시간
+    AtomicLong maxFanoutNanos = new AtomicLong(); // 가장 오래 걸린 fan-out
+    LatencyHistogram fanoutHistogram; // 서버 전체 fan-out 시간 분포 (모든 방이 함께 기록)
+    long lastMessages; // 직전 통계 출력 시점의 메시지 수 (전송률 계산용, stats()의 락으로 보호)
+    long lastStatsNanos = System.nanoTime(); // 직전 통계 출력 시각
+
+    public ChatRoom(String name, int historyCapacity, ThreadFactory threadFactory, LatencyHistogram fanoutHistogram) {
+        this.name = name;
+        this.fanoutHistogram = fanoutHistogram;
+        this.history = new ChatHistory(historyCapacity);
+        this.broadcaster = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    // 참여자 추가 (닫힌 방은 방 목록에서 함께 빠지므로 여기에 오지 않음)
+    public void add(ClientService client) {
+        lock.lock();
+        try {
+            ClientService[] next = new ClientService[members.length + 1];
+            System.arraycopy(members, 0, next, 0, members.length);
+            next[members.length] = client;
+            members = next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 참여자 제거. removeIfEmpty이고 마지막 참여자였으면 방을 닫고 true
+    public boolean remove(ClientService client, boolean removeIfEmpty) {
+        lock.lock();
+        try {
+            ClientService[] current = members;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == client) {
+                    ClientService[] next = new ClientService[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    members = next;
+                    break;
+                }
+            }
+            if (removeIfEmpty && members.length == 0) {
+                broadcaster.shutdown();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    // 방 참여자에게 메시지 전송 (보낸 사람 제외). 호출한 쓰레드는 작업을 넘기기만 함
+    // msg는 텍스트 클라이언트용 완성된 문장, body가 있으면 바이너리 클라이언트에는 from/time/body를 필드로 전송 (없으면 안내 문장)
+    public void broadcast(ClientService sender, String msg, String from, long time, String body) {
+        history.add(msg);
+        try {
+            broadcaster.execute(() -> fanOut(sender, msg, from, time, body));
+        } catch (RejectedExecutionException e) {
+            // 방이 닫힘 (남은 참여자 없음)
+        }
+    }
+
+    void fanOut(ClientService sender, String msg, String from, long time, String body) {
+        long start = System.nanoTime();
+        // 프로토콜별 프레임은 처음 필요할 때 한 번만 인코딩하고, 수신자마다 위치만 독립적인 읽기 전용 뷰를 공유
+        ByteBuffer textFrame = null;
+        ByteBuffer binaryFrame = null;
+        for (ClientService client : members) {
+            if (client == sender) {
+                continue;
+            }
+            if (client.binary) {
+                if (binaryFrame == null) {
+                    binaryFrame = body != null ? ClientService.messageFrame(Protocol.CHAT_MESSAGE, from, time, body)
+                            : ClientService.noticeFrame(msg);
+                }
+                client.sendFrame(binaryFrame.duplicate()); // 송신 대기열에 추가만 하므로 느린 클라이언트가 있어도 막히지 않음
+            } else {
+                if (textFrame == null) {
+                    textFrame = OutboundQueue.encode(msg);
+                }
+                client.sendFrame(textFrame.duplicate());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        messages.increment();
+        fanoutNanos.add(elapsed);
+        maxFanoutNanos.accumulateAndGet(elapsed, Math::max);
+        fanoutHistogram.record(elapsed);
+    }
+
+    // 최근 대화 (최근 count개)
+    public List<String> recent(int count) {
+        return history.range(-1, count);
+    }
+
+    // 통계 한 줄: 참여자 수, 메시지 수, 직전 출력 이후 초당 메시지 수, fan-out 평균/최대 시간
+    // (여러 곳에서 동시에 불러도 직전 출력 시점을 한 번씩만 갱신하도록 동기화)
+    public synchronized String stats() {
+        long now = System.nanoTime();
+        long total = messages.sum();
+        double seconds = Math.max(1e-9, (now - lastStatsNanos) / 1e9);
+        double rate = (total - lastMessages) / seconds;
+        lastMessages = total;
+        lastStatsNanos = now;
+        long avgMicros = total == 0 ? 0 : fanoutNanos.sum() / total / 1000;
+        return String.format("%s - 인원: %d, 메시지: %d, 전송률: %.1f/s, fan-out 평균: %dus, 최대: %dus",
+                name, size(), total, rate, avgMicros, maxFanoutNanos.get() / 1000);
+    }
+}
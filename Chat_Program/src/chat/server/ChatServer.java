@@ -1,134 +1,665 @@
 package chat.server;
 
-import java.io.FileWriter;
+import chat.common.ChunkMap;
+import chat.common.TimeCache;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ChatServer {
 
     final String quitCommand = "quit"; // 서버 종료 명령어
+    static final int LOG_CHUNK_BYTES = 8192; // 목록/로그 응답 프레임 하나에 담을 최대 바이트 수 (응답이 길어도 프레임 단위로 나누어 전송)
+    static final int MAX_STORE_PAGE = 10000; // /logs 요청 하나로 저장소에서 읽을 최대 로그 수
+    static final int STORE_READ_BATCH = 256; // 저장소에서 한 번에 읽어 전송하는 로그 수 (메모리에 올리는 양 제한)
+    static final int MAX_NAME_CHARS = 64; // 닉네임/방 이름 최대 글자 수 (저장소 레코드의 이름 길이 필드는 2바이트)
+    static final String LOBBY = "lobby"; // 접속하면 들어가는 기본 방 (비어도 없어지지 않음)
     ServerSocket serverSocket; // 서버 소켓 객체
-    Map<String, ClientService> chatClientInfo = new Hashtable<>(); // 클라이언트 목록
-    ArrayList<String> chatLogs = new ArrayList<>(); // 서버 로그 저장
-    SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss"); // 시간 형식 지정
-    PrintWriter logWriter; // 로그 파일 작성기
+    ClientRegistry clients = new ClientRegistry(); // 클라이언트 목록 (닉네임 -> 클라이언트, 락 없이 조회)
+    Map<String, ChatRoom> rooms = new ConcurrentHashMap<>(); // 방 이름 -> 방
+    int roomHistoryCapacity = Integer.getInteger("chat.room.historyCapacity", 200); // 방마다 보관하는 최근 대화 수
+    int roomReplay = Integer.getInteger("chat.room.replay", 20); // 방에 들어갈 때 보여줄 최근 대화 수
+    ChatHistory chatLogs = new ChatHistory(Integer.getInteger("chat.history.capacity", 10000)); // 최근 서버 로그 저장
+    ReentrantLock recordLock = new ReentrantLock(); // 메모리 로그와 저장소에 같은 순서로 넣기 위한 잠금 (두 곳의 로그 번호가 같아짐)
+    TimeCache timeText = new TimeCache(DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault())); // 시각 문자열 (같은 초에는 캐시 공유, 락 없음)
+    AsyncLogWriter logWriter; // 로그 파일 작성기 (전용 쓰레드에서 모아서 기록)
+    MessageStore messageStore; // 세그먼트 파일 기반 메시지 저장소 (재시작 후에도 로그 유지)
+    SearchIndex searchIndex; // 저장소 메시지의 역색인 (/search, 저장소가 없으면 null)
+    int replayOnJoin = Integer.getInteger("chat.history.replayOnJoin", 0); // 입장 시 보여줄 최근 로그 수
+    int nioThreads; // NIO 모드의 I/O 스레드 수 (0이면 클라이언트당 스레드 방식)
+    NioServer nioServer; // NIO 모드 서버
+    int outboundCapacity = Integer.getInteger("chat.outbound.capacity", 1024); // 클라이언트별 송신 대기열 크기
+    OutboundQueue.Policy slowConsumerPolicy = OutboundQueue.Policy.parse(
+            System.getProperty("chat.outbound.policy", "DROP_OLDEST")); // 대기열이 가득 찼을 때의 정책 (잘못된 값이면 경고 후 기본값)
+    int transferBufferSize = Integer.getInteger("chat.transfer.bufferSize", 64 * 1024); // 제로 카피를 못 쓸 때의 전송 버퍼 크기
+    // 청크 업로드 수신 버퍼 (전송 쓰레드마다 하나를 재사용하므로 다이렉트 메모리 사용량이 전송 쓰레드 수로 제한됨)
+    ThreadLocal<ByteBuffer> transferBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(transferBufferSize));
+    // 클라이언트별 요청 한도 (초당, 0이면 제한 없음). 넘으면 그 클라이언트의 소켓 읽기를 잠시 멈춘다
+    double messageLimit = Double.parseDouble(System.getProperty("chat.limit.messages", "50")); // 메시지/명령 수
+    double byteLimit = Double.parseDouble(System.getProperty("chat.limit.bytes", "262144")); // 메시지 바이트 수
+    double logsLimit = Double.parseDouble(System.getProperty("chat.limit.logs", "2")); // /logs
+    double usersLimit = Double.parseDouble(System.getProperty("chat.limit.users", "2")); // /users, /rooms
+    double imageLimit = Double.parseDouble(System.getProperty("chat.limit.images", "1")); // 이미지 업로드
+    double limitBurstSeconds = Double.parseDouble(System.getProperty("chat.limit.burstSeconds", "2")); // 몰아서 쓸 수 있는 한도 (초)
+    ThreadFactory threadFactory = Thread::new; // 접속 수락/클라이언트 수신 쓰레드 생성기
+    ExecutorService transferExecutor; // 파일 전송 연결 전용 쓰레드 풀 (채팅 처리 쓰레드와 분리)
+    ExecutorService storeReader; // 저장소를 읽는 /logs, /search 처리용 쓰레드 풀 (NIO I/O 스레드가 디스크를 기다리지 않도록)
+    Map<String, ClientService> transferTokens = new ConcurrentHashMap<>(); // 전송 연결 인증 토큰 -> 클라이언트
+    Map<String, ChunkedUpload> uploads = new ConcurrentHashMap<>(); // 진행 중인 청크 업로드 (닉네임/파일명 -> 상태)
+    Map<String, ChunkMap> chunkMaps = new ConcurrentHashMap<>(); // 저장된 파일의 청크 목록 캐시 (파일 경로 -> 목록)
+    BlobStore blobStore; // 업로드 이미지 저장소 (내용 해시로 중복 제거, 많이 받는 이미지는 메모리 캐시)
+    ServerMetrics metrics = new ServerMetrics(this); // 서버 지표 (JMX와 콘솔 metrics 명령으로 조회)
+    Cluster cluster; // 다른 서버 노드와 접속자/방 메시지 공유 (chat.cluster.node가 없으면 null: 단일 서버)
+    Roster roster = new Roster(this); // /users 응답 캐시 (접속자 변경 때만 다시 인코딩)와 변경 구독
+    volatile boolean draining; // 종료 준비 중 (새 접속을 받지 않음)
+    long drainTimeoutMillis = Long.getLong("chat.drain.timeoutMillis", 5000); // 종료 시 전송/송신 대기열을 기다리는 최대 시간
+    long reconnectWindowMillis = Long.getLong("chat.drain.reconnectMillis", 10000); // 클라이언트 재접속 시각을 흩뜨리는 범위
 
     // 서버 시작 메서드
     public void start(int portNo) {
+        metrics.start();
         try {
-            serverSocket = new ServerSocket(portNo); // 서버 소켓 생성
+            if (nioThreads > 0) {
+                nioServer = new NioServer(this, portNo, nioThreads); // Selector 기반 서버 생성
+            } else {
+                // 채널 기반 서버 소켓 생성 (수락한 소켓에서 transferTo/transferFrom을 쓰기 위함)
+                serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(portNo)).socket();
+            }
             System.out.println("[채팅서버] 시작 (" + InetAddress.getLocalHost() + ":" + portNo + ")");
-            logWriter = new PrintWriter(new FileWriter("server_logs.txt", true), true); // 로그 파일 열기
+            String storeDir = System.getProperty("chat.store.dir", "chat_store");
+            if (!storeDir.isEmpty()) {
+                messageStore = new MessageStore(new File(storeDir),
+                        Long.getLong("chat.store.segmentBytes", 64L * 1024 * 1024),
+                        Integer.getInteger("chat.store.maxSegments", 16)); // 저장소 열기 (끊긴 레코드 복구)
+                restore(new File(storeDir));
+                storeReader = Executors.newFixedThreadPool(Integer.getInteger("chat.store.readers", 2), this::newDaemonThread);
+            }
+            blobStore = new BlobStore(new File(System.getProperty("chat.blob.dir", "chat_blobs")),
+                    Long.getLong("chat.blob.cacheBytes", 64L * 1024 * 1024));
+            int staleParts = blobStore.removeStaleParts(TimeUnit.HOURS.toMillis(Long.getLong("chat.blob.partMaxAgeHours", 24)));
+            if (staleParts > 0) {
+                System.out.println("[채팅서버] 오래된 미완성 업로드 " + staleParts + "개 삭제");
+            }
+            transferExecutor = Executors.newFixedThreadPool(Integer.getInteger("chat.transfer.threads", 8), threadFactory);
+            logWriter = new AsyncLogWriter("server_logs.txt", messageStore, searchIndex, Integer.getInteger("chat.log.batchSize", 256),
+                    Long.getLong("chat.log.flushMillis", 50), Boolean.getBoolean("chat.log.fsync")); // 로그 파일 열기
+            if (cluster == null) {
+                cluster = Cluster.fromProperties(this);
+            }
+            if (cluster != null) {
+                cluster.start(); // 다른 노드와 연결 (연결되는 대로 접속자 목록 교환)
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // 최근 로그, 로비 대화, 검색 색인 복원. 정상 종료 때 남긴 스냅샷이 있으면 그대로 읽고, 없으면 저장소에서 다시 만듦
+    void restore(File storeDir) throws IOException {
+        long start = System.nanoTime();
+        ChatRoom lobby = rooms.computeIfAbsent(LOBBY, this::newRoom); // 재접속한 사용자가 직전 대화를 볼 수 있도록 미리 만듦
+        searchIndex = new SearchIndex();
+        boolean warm = ServerSnapshot.load(storeDir, messageStore.endSeq(), chatLogs, lobby.history, searchIndex);
+        if (!warm) {
+            chatLogs = new ChatHistory(chatLogs.capacity()); // 읽다 실패한 스냅샷의 일부가 남지 않도록
+            lobby.history = new ChatHistory(roomHistoryCapacity);
+            searchIndex = new SearchIndex();
+            for (MessageStore.Record record : messageStore.tail(chatLogs.capacity())) {
+                chatLogs.add(record.text); // 최근 로그를 메모리로 복원
+            }
+            searchIndex.rebuild(messageStore); // 보관 중인 메시지로 검색 색인 생성 (이후는 로그 쓰레드가 갱신)
+        }
+        chatLogs.renumber(messageStore.endSeq()); // /logs 번호를 저장소 번호와 맞춤
+        System.out.println("[채팅서버] " + (warm ? "스냅샷" : "저장소") + "에서 복원 (로그 " + chatLogs.size() + "개, 검색 색인 "
+                + searchIndex.size() + "개, " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms)");
+    }
+
+    // 가상 쓰레드 모드 설정 (JDK 21 이상). 지원하지 않으면 false를 반환하고 기존 쓰레드를 사용
+    public boolean useVirtualThreads() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            threadFactory = (ThreadFactory) factory.invoke(builder);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    // 서버 작업용 쓰레드 생성
+    Thread newThread(Runnable task) {
+        return threadFactory.newThread(task);
+    }
+
+    // 서버 작업용 데몬 쓰레드 생성 (가상 쓰레드는 항상 데몬)
+    Thread newDaemonThread(Runnable task) {
+        Thread thread = newThread(task);
+        if (!thread.isDaemon()) {
+            thread.setDaemon(true);
+        }
+        return thread;
+    }
+
+    // 클라이언트용 송신 대기열 생성 (생략 안내는 그 클라이언트의 프로토콜로 인코딩)
+    OutboundQueue newOutboundQueue(ClientService client) {
+        return new OutboundQueue(outboundCapacity, slowConsumerPolicy, client::frame);
+    }
+
+    // 클라이언트별 한도 생성 (초당 한도가 0 이하면 null: 제한 없음)
+    RateLimiter newLimiter(double perSecond) {
+        return perSecond > 0 ? new RateLimiter(perSecond, Math.max(1, perSecond * limitBurstSeconds)) : null;
+    }
+
+    // 파일 전송 연결을 전송 전용 쓰레드 풀에 넘김
+    void startTransfer(SocketChannel channel, String handshake, ByteBuffer leftover) {
+        transferExecutor.execute(new TransferService(this, channel, handshake, leftover));
+    }
+
+    // 다운로드용 청크 목록 (저장소 파일은 내용이 바뀌지 않으므로 한 번 계산하면 재사용)
+    ChunkMap chunkMap(File file) throws IOException {
+        ChunkMap map = chunkMaps.get(file.getPath());
+        if (map == null || map.size() != file.length()) {
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                map = ChunkMap.compute(fc);
+            }
+            chunkMaps.put(file.getPath(), map);
+        }
+        return map;
+    }
+
     // 클라이언트 연결 요청 처리
     public void connectClient() {
-        Thread thread = new Thread(() -> {
+        if (nioServer != null) {
+            nioServer.start(); // I/O 스레드가 접속 수락과 메시지 수신을 모두 처리
+            return;
+        }
+        newDaemonThread(() -> {
             try {
                 while (true) {
                     Socket socket = serverSocket.accept(); // 클라이언트 연결 수락
                     new ClientService(this, socket); // 새로운 클라이언트 서비스 생성
                 }
             } catch (Exception e) {
-                e.printStackTrace();
+                if (!draining) {
+                    e.printStackTrace();
+                }
             }
+        }).start();
+    }
+
+    // 클라이언트 추가. 닉네임이 이미 사용 중이면 false로 완료되고, 클러스터면 담당 노드가 응답할 때 완료된다
+    // (응답을 기다리며 쓰레드를 막지 않도록 future로 반환, 성공하면 호출한 쪽이 자기 쓰레드에서 joinClient로 입장 처리)
+    public CompletableFuture<Boolean> addClientInfo(ClientService clientService) {
+        String name = clientService.chatName;
+        if (!clients.register(name, clientService)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (cluster == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return cluster.claim(name).thenApply(granted -> {
+            if (!granted) {
+                clients.unregister(name, clientService); // 다른 노드에서 사용 중
+            }
+            return granted;
         });
-        thread.setDaemon(true); // 데몬 쓰레드로 설정
-        thread.start();
     }
 
-    // 클라이언트 추가
-    public synchronized void addClientInfo(ClientService clientService) {
-        chatClientInfo.put(clientService.chatName, clientService); // 클라이언트 등록
-        String log = "[입장] " + clientService.chatName + " (현재 인원: " + chatClientInfo.size() + ")";
-        chatLogs.add(log); // 로그 저장
-        System.out.println(log); // 로그 출력
-        writeLog(log);
-        sendToAll(clientService, log);
+    // 닉네임을 선점한 클라이언트의 입장 처리 (로비 입장, 접속자 목록 갱신, 입장 안내)
+    void joinClient(ClientService clientService) {
+        enterRoom(clientService, LOBBY);
+        roster.joined(clientService.chatName);
+        if (cluster != null) {
+            cluster.userJoined(clientService.chatName, LOBBY);
+        }
+        announce(clientService, MessageStore.TYPE_JOIN, "[입장] " + clientService.chatName + " (현재 인원: " + userCount() + ")");
     }
 
     // 클라이언트 제거
-    public synchronized void removeClientInfo(ClientService clientService) {
-        chatClientInfo.remove(clientService.chatName);
-        String log = "[퇴장] " + clientService.chatName + " (현재 인원: " + chatClientInfo.size() + ")";
-        chatLogs.add(log);
-        System.out.println(log);
-        writeLog(log);
+    public void removeClientInfo(ClientService clientService) {
+        if (clients.unregister(clientService.chatName, clientService)) {
+            roster.left(clientService.chatName);
+            if (cluster != null) {
+                cluster.userLeft(clientService.chatName);
+            }
+            announce(clientService, MessageStore.TYPE_LEAVE, "[퇴장] " + clientService.chatName + " (현재 인원: " + userCount() + ")");
+            exitRoom(clientService);
+        }
+    }
+
+    // 전체 접속자 수 (클러스터면 다른 노드 접속자 포함)
+    int userCount() {
+        return clients.size() + (cluster != null ? cluster.remoteCount() : 0);
+    }
+
+    // 닉네임 변경 선점 (새 닉네임을 이미 누가 사용 중이면 false로 완료). 클러스터면 담당 노드가 응답할 때 완료되며,
+    // 성공하면 호출한 쪽이 clientRenamed로 변경을 알림
+    public CompletableFuture<Boolean> renameClient(ClientService clientService, String newName) {
+        String oldName = clientService.chatName;
+        if (!clients.rename(clientService, oldName, newName)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (cluster == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return cluster.claim(newName).thenApply(granted -> {
+            if (!granted) {
+                clients.rename(clientService, newName, oldName); // 다른 노드에서 사용 중이면 되돌림
+            }
+            return granted;
+        });
+    }
+
+    // 닉네임 변경 완료. 다른 사용자에게는 이전 닉네임 퇴장, 새 닉네임 입장으로 알림
+    void clientRenamed(ClientService clientService, String oldName, String newName) {
+        clientService.chatName = newName;
+        roster.renamed(oldName, newName);
+        if (cluster != null) {
+            cluster.userRenamed(oldName, newName);
+        }
+        int count = userCount();
+        announce(clientService, MessageStore.TYPE_LEAVE, "[퇴장] " + oldName + " (현재 인원: " + (count - 1) + ")");
+        announce(clientService, MessageStore.TYPE_JOIN, "[입장] " + newName + " (현재 인원: " + count + ")");
+    }
+
+    // 방에 들어감 (없으면 만듦). 방을 닫고 목록에서 빼는 exitRoom과 같은 키의 compute 안에서 처리하므로
+    // 닫히는 중인 방을 만나 기다릴 일이 없음
+    ChatRoom enterRoom(ClientService clientService, String name) {
+        ChatRoom room = rooms.compute(name, (key, current) -> {
+            ChatRoom target = current != null ? current : newRoom(key);
+            target.add(clientService);
+            return target;
+        });
+        clientService.room = room;
+        return room;
+    }
+
+    // 현재 방에서 나감 (로비가 아닌 방이 비면 닫고 같은 compute 안에서 목록에서 뺌)
+    void exitRoom(ClientService clientService) {
+        ChatRoom room = clientService.room;
+        if (room != null) {
+            rooms.compute(room.name, (key, current) ->
+                    room.remove(clientService, current == room && !key.equals(LOBBY)) ? null : current);
+        }
+    }
+
+    ChatRoom newRoom(String name) {
+        return new ChatRoom(name, roomHistoryCapacity, this::newDaemonThread, metrics.fanout);
+    }
+
+    // 다른 방으로 이동. 이전 방에는 퇴장, 새 방에는 입장 안내 후 새 방의 최근 대화를 보여줌
+    public void changeRoom(ClientService clientService, String name) {
+        sendToAll(clientService, "[퇴장] " + clientService.chatName + " (" + name + " 방으로 이동)");
+        exitRoom(clientService);
+        ChatRoom room = enterRoom(clientService, name);
+        if (cluster != null) {
+            cluster.userMoved(clientService.chatName, name);
+        }
+        List<String> recent = room.recent(roomReplay);
+        sendToAll(clientService, "[입장] " + clientService.chatName + " (방: " + name + ", 인원: " + room.size() + ")");
+        clientService.send("[서버] " + name + " 방에 입장했습니다. (인원: " + room.size() + ")");
+        if (!recent.isEmpty()) {
+            sendChunked(clientService, "", recent);
+        }
+    }
+
+    // 방 목록 전송
+    public void sendRooms(ClientService clientService) {
+        Iterable<String> lines = () -> rooms.values().stream()
+                .map(room -> room.name + " (" + room.size() + "명)" + (room == clientService.room ? " *" : ""))
+                .iterator();
+        sendChunked(clientService, "[방 목록]\n", lines);
+    }
+
+    // 방별 통계 출력 (인원, 메시지 수, 전송률, fan-out 지연)
+    public void printRoomStats() {
+        System.out.println("[방 통계] " + rooms.size() + "개");
+        for (ChatRoom room : rooms.values()) {
+            System.out.println(room.stats());
+        }
+    }
+
+    // 입장/퇴장 안내 출력, 기록 및 전송
+    private void announce(ClientService clientService, byte type, String log) {
+        System.out.println(log); // 로그 출력
+        record(type, clientService.chatName, roomOf(clientService), log); // 로그 저장
         sendToAll(clientService, log);
     }
 
-    // 모든 클라이언트에 메시지 전송 및 로그 기록
-    public synchronized void sendToAll(ClientService sender, String msg) {
+    // 클라이언트가 있는 방 이름 (없으면 빈 문자열). 저장소 레코드에 함께 기록하여 /search 결과를 방별로 거름
+    private static String roomOf(ClientService clientService) {
+        ChatRoom room = clientService.room;
+        return room != null ? room.name : "";
+    }
+
+    // 보낸 사람이 있는 방의 모든 클라이언트에 메시지 전송 및 로그 기록 (전송은 방 전용 쓰레드가 처리)
+    public void sendToAll(ClientService sender, String msg) {
         String formattedMsg;
+        long time = System.currentTimeMillis();
+        String body = null; // 일반 대화일 때만 (바이너리 클라이언트에는 보낸 사람, 시각, 본문을 따로 전송)
+        ChatRoom room = sender.room;
+        String roomName = room != null ? room.name : "";
         if (msg.startsWith("[입장]") || msg.startsWith("[퇴장]") || msg.startsWith("[이미지]") || msg.startsWith("[귓속말]")) {
             formattedMsg = msg; // 포맷 유지
-            chatLogs.add(formattedMsg);
-            writeLog(formattedMsg);
+            record(msg.startsWith("[입장]") ? MessageStore.TYPE_JOIN
+                    : msg.startsWith("[퇴장]") ? MessageStore.TYPE_LEAVE : MessageStore.TYPE_NOTICE,
+                    sender.chatName, roomName, formattedMsg);
         } else {
-            formattedMsg = String.format("[%s](%s): %s",
-                    sender.chatName, timeFormat.format(System.currentTimeMillis()), msg);
-            chatLogs.add(formattedMsg); // 메시지를 로그에 저장
-            writeLog(formattedMsg);
+            formattedMsg = formatChat(sender.chatName, time, msg);
+            body = msg;
+            record(MessageStore.TYPE_CHAT, sender.chatName, roomName, formattedMsg); // 메시지를 로그에 저장
         }
-
-        for (ClientService client : chatClientInfo.values()) {
-            if (client != sender) {
-                client.send(formattedMsg);
+        if (room != null) {
+            room.broadcast(sender, formattedMsg, sender.chatName, time, body);
+            if (cluster != null) {
+                cluster.roomMessage(room.name, formattedMsg, sender.chatName, time, body); // 같은 방 참여자가 있는 노드로
             }
         }
     }
 
-    // 접속자 목록 전송
-    public synchronized void sendUsers(ClientService clientService) {
-        StringBuilder users = new StringBuilder("[현재 접속자 목록]\n");
-        for (String name : chatClientInfo.keySet()) {
-            users.append(name).append("\n");
-        }
-        clientService.send(users.toString());
+    // epoch millis를 HH:mm:ss 로
+    String time(long millis) {
+        return timeText.format(millis);
+    }
+
+    // [보낸이](HH:mm:ss): 본문 (String.format 대신 결과 크기에 맞춘 연결 하나로 만듦)
+    String formatChat(String from, long millis, String body) {
+        return "[" + from + "](" + time(millis) + "): " + body;
+    }
+
+    // 접속자 목록 전송 (접속자가 바뀌지 않았으면 이전에 인코딩한 프레임을 그대로 공유)
+    public void sendUsers(ClientService clientService) {
+        roster.send(clientService);
     }
 
     // 로그를 기록하는 메서드
-    public synchronized void logCommand(String clientName, String command, String result) {
-        String logEntry = String.format("[명령어] %s -> %s : %s", clientName, command, result);
-        chatLogs.add(logEntry); // 명령어 로그 저장
+    public void logCommand(String clientName, String command, String result) {
+        String logEntry = "[명령어] " + clientName + " -> " + command + " : " + result;
         System.out.println(logEntry);
-        writeLog(logEntry);
+        record(MessageStore.TYPE_COMMAND, clientName, "", logEntry); // 명령어 로그 저장
+    }
+
+    // 저장소를 읽는 작업을 storeReader에서 실행 (저장소를 쓰지 않으면 바로 실행)
+    CompletableFuture<Void> readStore(Runnable task) {
+        if (storeReader == null) {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(task, storeReader);
+    }
+
+    // 로그를 클라이언트에게 전송 (from은 로그 번호, 음수면 최근 count개). 락 없이 여러 프레임으로 나누어 전송
+    // 번호는 오래된 로그가 지워져도 바뀌지 않으므로, 머리말의 다음 번호로 이어서 요청하면 빠지거나 겹치는 로그가 없다
+    public void showLogs(ClientService clientService, long from, int count) {
+        if (messageStore != null && (from >= 0 || count > chatLogs.capacity())) {
+            showStoredLogs(clientService, from, count); // 메모리 범위를 벗어나는 요청은 저장소에서 읽음
+            return;
+        }
+        ChatHistory.Page page = chatLogs.page(from, count);
+        clientService.send(logHeader(page.first, page.end, page.from, page.from + page.lines.size(), count));
+        sendChunked(clientService, "", page.lines);
+    }
+
+    // 저장소에서 인덱스로 위치를 찾아 STORE_READ_BATCH개씩 읽으며 바로 전송 (요청 전체를 메모리에 올리지 않음)
+    void showStoredLogs(ClientService clientService, long from, int count) {
+        int limit = Math.min(count, MAX_STORE_PAGE);
+        long[] bounds = messageStore.bounds(); // 머리말과 읽을 범위를 같은 시점의 보관 범위로 계산
+        long first = bounds[0];
+        long end = bounds[1];
+        long start = from < 0 ? Math.max(first, end - limit) : Math.min(Math.max(from, first), end);
+        long stop = Math.min(end, start + limit);
+        clientService.send(logHeader(first, end, start, stop, count));
+        LineChunker chunker = new LineChunker("", clientService::send);
+        try {
+            for (long seq = start; seq < stop; ) {
+                List<MessageStore.Record> batch = messageStore.read(seq, (int) Math.min(STORE_READ_BATCH, stop - seq));
+                if (batch.isEmpty() || batch.get(0).seq != seq) {
+                    chunker.finish();
+                    clientService.send("[서버] 읽는 사이에 오래된 로그가 삭제되어 " + seq + "번부터는 보낼 수 없습니다.");
+                    return;
+                }
+                for (MessageStore.Record record : batch) {
+                    chunker.add(record.text);
+                }
+                seq = batch.get(batch.size() - 1).seq + 1;
+            }
+        } catch (IOException e) {
+            clientService.send("[서버] 로그를 읽는 중 오류가 발생했습니다: " + e.getMessage());
+            return;
+        }
+        chunker.finish();
     }
 
-    // 로그를 클라이언트에게 전송
-    public synchronized void showLogs(ClientService clientService) {
-        StringBuilder logs = new StringBuilder("[서버 로그]\n");
-        for (String log : chatLogs) {
-            logs.append(log).append("\n");
+    // /logs 응답 머리말 (보관 중인 번호 범위, 이 페이지의 번호 범위, 다음 페이지 요청)
+    static String logHeader(long first, long end, long from, long to, int count) {
+        return "[서버 로그] (보관 " + first + "~" + end + "번 중 " + from + "~" + to + "번"
+                + (to < end ? ", 다음: /logs:" + to + ":" + count : "") + ")";
+    }
+
+    // 저장소 메시지 검색 결과 전송 (지금 있는 방의 메시지, 최신순, 한 페이지 SearchIndex.PAGE_SIZE개)
+    // 색인에서 최신 후보를 CANDIDATE_BATCH개씩 꺼내 페이지가 찰 때까지만 읽고, 3글자 이상 검색어일 때만 본문을 다시 확인한다
+    public void search(ClientService clientService, String text) {
+        if (searchIndex == null) {
+            clientService.send("[서버] 메시지 저장소를 사용하지 않아 검색할 수 없습니다.");
+            return;
+        }
+        SearchIndex.Query query;
+        try {
+            query = SearchIndex.Query.parse(text);
+        } catch (IllegalArgumentException e) {
+            clientService.send("[서버] " + e.getMessage());
+            return;
+        }
+        String room = roomOf(clientService); // 지금 있는 방의 메시지만 검색
+        boolean exact = query.exact();
+        int skip = (query.page - 1) * SearchIndex.PAGE_SIZE;
+        List<String> lines = new ArrayList<>();
+        boolean more = false;
+        try {
+            long before = messageStore.endSeq(); // 아직 저장소에 기록되지 않은 후보는 제외
+            if (query.until != Long.MAX_VALUE) {
+                before = Math.min(before, messageStore.seqAt(query.until + 1)); // until 이후의 문서는 색인에서 훑지 않음
+            }
+            int matched = 0;
+            while (!more) {
+                long[] candidates = searchIndex.candidates(query, room, before, SearchIndex.CANDIDATE_BATCH);
+                if (candidates.length == 0) {
+                    break;
+                }
+                for (long seq : candidates) {
+                    before = seq;
+                    if (exact && matched < skip) {
+                        matched++; // 색인만으로 확실한 결과는 앞 페이지를 읽지 않고 건너뜀
+                        continue;
+                    }
+                    List<MessageStore.Record> batch = messageStore.read(seq, 1);
+                    if (batch.isEmpty() || batch.get(0).seq != seq) {
+                        continue; // 오래된 세그먼트가 삭제됨
+                    }
+                    MessageStore.Record record = batch.get(0);
+                    if (!exact && !query.matches(SearchIndex.body(record.sender, record.text))) {
+                        continue;
+                    }
+                    if (matched++ < skip) {
+                        continue;
+                    }
+                    if (lines.size() == SearchIndex.PAGE_SIZE) {
+                        more = true;
+                        break;
+                    }
+                    lines.add(record.text);
+                }
+            }
+        } catch (IOException e) {
+            clientService.send("[서버] 검색 중 오류가 발생했습니다: " + e.getMessage());
+            return;
+        }
+        String header = "[검색 결과] " + String.join(" ", query.terms) + " (" + query.page + "페이지 " + lines.size() + "건"
+                + (more ? ", 다음: page:" + (query.page + 1) : "") + ")\n";
+        sendChunked(clientService, header, lines);
+    }
+
+    // 여러 줄을 LOG_CHUNK_BYTES 이내의 프레임으로 나누어 차례로 전송 (header는 첫 프레임 앞에 붙음)
+    void sendChunked(ClientService clientService, String header, Iterable<String> lines) {
+        LineChunker chunker = new LineChunker(header, clientService::send);
+        for (String line : lines) {
+            chunker.add(line);
+        }
+        chunker.finish();
+    }
+
+    // 클라이언트별 송신 대기열 상태 출력
+    public void printQueueStats() {
+        System.out.println("[송신 대기열] 정책: " + slowConsumerPolicy + ", 크기: " + outboundCapacity);
+        for (ClientService client : clients.snapshot()) {
+            OutboundQueue queue = client.outbound;
+            System.out.println(client.chatName + " - 대기: " + queue.depth() + ", 최대: " + queue.maxDepth()
+                    + ", 버림: " + queue.dropped());
         }
-        clientService.send(logs.toString());
     }
 
     // 로그 파일에 기록
-    private synchronized void writeLog(String log) {
+    private void writeLog(byte type, String sender, String room, String log) {
         if (logWriter != null) {
-            logWriter.println(log);
+            logWriter.append(System.currentTimeMillis(), type, sender, room, log); // 큐에 넣기만 하고 파일 I/O는 로그 쓰레드가 처리
+        }
+    }
+
+    // 메모리 로그와 파일/저장소에 함께 기록. 저장소 기록은 큐에 넣기만 하므로 잠금 구간이 짧다
+    private void record(byte type, String sender, String room, String log) {
+        recordLock.lock();
+        try {
+            chatLogs.add(log);
+            writeLog(type, sender, room, log);
+        } finally {
+            recordLock.unlock();
+        }
+    }
+
+    // 종료 준비: 새 접속을 받지 않고, 클라이언트마다 다른 재접속 시각을 알린 뒤 진행 중인 파일 전송과
+    // 송신 대기열이 비기를 기다렸다가(최대 drainTimeoutMillis) 연결을 끊는다. 재시작 후 재접속이 한꺼번에 몰리지 않음
+    public void drain() {
+        draining = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        try {
+            if (nioServer != null) {
+                nioServer.stopAccepting();
+            } else {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        ClientService[] snapshot = clients.snapshot();
+        System.out.println("[채팅서버] 종료 준비 (접속 " + snapshot.length + "명)");
+        for (ClientService client : snapshot) {
+            client.send("[서버] 서버 점검을 위해 연결을 종료합니다. 잠시 후 자동으로 다시 접속합니다.");
+            client.sendReconnect(ThreadLocalRandom.current().nextLong(reconnectWindowMillis + 1)); // 재접속 시각을 고르게 흩뜨림
+        }
+        if (transferExecutor != null) {
+            transferExecutor.shutdown(); // 진행 중인 업로드/다운로드는 끝까지 처리
+            try {
+                if (!transferExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    transferExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (ChunkedUpload upload : uploads.values()) {
+            upload.close(); // 끝나지 않은 업로드는 .part 파일을 남겨 재접속 후 이어 받음
+        }
+        for (ClientService client : snapshot) {
+            while (client.outbound.depth() > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(10); // 재접속 안내까지 전송되기를 기다림
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            client.disconnect();
+        }
+        while (clients.size() > 0 && System.nanoTime() < deadline + TimeUnit.SECONDS.toNanos(1)) {
+            try {
+                Thread.sleep(10); // 퇴장 기록이 로그에 남도록 수신 쓰레드의 종료 처리를 기다림
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    // 메모리 상태를 스냅샷으로 기록 (로그를 모두 기록한 뒤, 저장소를 닫기 전에 호출)
+    void saveSnapshot() {
+        if (messageStore == null || searchIndex == null) {
+            return;
+        }
+        ChatRoom lobby = rooms.get(LOBBY);
+        try {
+            ServerSnapshot.save(messageStore.dir, messageStore.endSeq(), chatLogs, lobby != null ? lobby.history : null,
+                    searchIndex); // 다음 시작 때 저장소를 다시 읽지 않도록
+        } catch (IOException e) {
+            System.out.println("[채팅서버] 스냅샷 기록 실패 (다음 시작 때 저장소에서 복원): " + e.getMessage());
         }
     }
 
     // 서버 종료
     public void stop() {
         try {
+            if (nioServer != null) {
+                nioServer.close();
+            } else {
+                serverSocket.close();
+            }
+            if (transferExecutor != null) {
+                transferExecutor.shutdown();
+            }
+            if (storeReader != null) {
+                storeReader.shutdown();
+            }
             if (logWriter != null) {
-                logWriter.close();
+                logWriter.close(); // 남은 로그를 모두 기록한 뒤 종료
+            }
+            saveSnapshot();
+            for (ChatRoom room : rooms.values()) {
+                room.broadcaster.shutdown();
+            }
+            if (messageStore != null) {
+                messageStore.close();
             }
-            serverSocket.close();
+            if (blobStore != null) {
+                blobStore.close();
+            }
+            if (cluster != null) {
+                cluster.close();
+            }
+            metrics.close();
             System.out.println("[채팅서버] 종료");
         } catch (IOException e) {
             e.printStackTrace();
@@ -137,16 +668,33 @@ public class ChatServer {
 
     public static void main(String[] args) {
         ChatServer chatServer = new ChatServer();
-        chatServer.start(18956); // 서버 시작
+        // 실행 인자: nio [I/O 스레드 수] -> Selector 기반 모드, virtual -> 가상 쓰레드 모드
+        if (args.length > 0 && args[0].equalsIgnoreCase("nio")) {
+            chatServer.nioThreads = args.length > 1 ? Integer.parseInt(args[1])
+                    : Runtime.getRuntime().availableProcessors();
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("virtual")) {
+            if (!chatServer.useVirtualThreads()) {
+                System.out.println("[채팅서버] 가상 쓰레드를 지원하지 않는 JDK입니다 (JDK 21 이상 필요). 기본 모드로 실행합니다.");
+            }
+        }
+        chatServer.start(Integer.getInteger("chat.port", 18956)); // 서버 시작 (같은 컴퓨터에 클러스터 노드를 여러 개 띄울 때는 포트를 다르게)
         chatServer.connectClient(); // 클라이언트 연결 처리
 
         // 서버 종료 명령 처리
         Scanner scanner = new Scanner(System.in);
         while (true) {
-            System.out.println("서버를 종료하려면 quit을 입력하세요.");
+            System.out.println("서버를 종료하려면 quit을 입력하세요. (queues: 송신 대기열 상태, rooms: 방별 통계, metrics: 서버 지표)");
             String command = scanner.nextLine();
             if (command.equalsIgnoreCase(chatServer.quitCommand)) {
+                chatServer.drain(); // 전송 중인 메시지/파일을 마저 보내고 클라이언트에 재접속을 안내
                 break;
+            } else if (command.equalsIgnoreCase("queues")) {
+                chatServer.printQueueStats();
+            } else if (command.equalsIgnoreCase("rooms")) {
+                chatServer.printRoomStats();
+            } else if (command.equalsIgnoreCase("metrics")) {
+                System.out.println("[서버 지표]");
+                System.out.println(chatServer.metrics.report());
             }
         }
         chatServer.stop();
@@ -0,0 +1,108 @@
+package chat.server;
+
+import chat.common.ChunkMap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// 청크 단위로 받는 업로드 하나의 상태. 여러 전송 연결이 같은 .part 파일에 동시에 기록한다
+// (연결이 끊겨도 .part 파일이 남아 있어 다음 업로드에서 CRC가 맞는 청크는 다시 받지 않음)
+public class ChunkedUpload {
+
+    BlobStore store; // 다 받은 파일을 넘길 저장소
+    ClientService owner; // 업로드를 시작한 클라이언트 (청크는 이 클라이언트의 전송 연결에서만 받음)
+    String fileName; // 업로드 파일명
+    ChunkMap map; // 클라이언트가 보낸 청크 목록
+    File part; // 받는 중인 파일
+    FileChannel channel; // .part 파일 채널 (위치 지정 쓰기는 여러 쓰레드에서 동시에 가능)
+    BitSet received = new BitSet(); // 검증을 마친 청크
+    ReentrantLock lock = new ReentrantLock();
+
+    public ChunkedUpload(BlobStore store, ClientService owner, String fileName, ChunkMap map) throws IOException {
+        this.store = store;
+        this.owner = owner;
+        this.fileName = fileName;
+        this.map = map;
+        this.part = store.partFile(owner.chatName, fileName);
+        channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        received.set(0, map.count());
+        for (int index : map.missing(channel)) { // 이전에 받다 만 파일이면 맞는 청크는 건너뜀
+            received.clear(index);
+        }
+    }
+
+    // 아직 받지 못한 청크 번호
+    public List<Integer> missing() {
+        lock.lock();
+        try {
+            List<Integer> result = new ArrayList<>();
+            for (int i = received.nextClearBit(0); i < map.count(); i = received.nextClearBit(i + 1)) {
+                result.add(i);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 청크 하나를 입력에서 읽어 기록. 청크 크기와 관계없이 buffer 크기씩 나누어 CRC를 계산하며 기록하고,
+    // CRC가 맞지 않으면 그 청크를 받지 않은 것으로 표시하고 false (완료 전에 다시 받음)
+    public boolean receive(int index, ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        CRC32C crc = new CRC32C();
+        long position = map.offset(index);
+        long end = position + map.length(index);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer) < 0) {
+                    throw new EOFException("청크 " + index + " 수신 중 연결 종료");
+                }
+            }
+            buffer.flip();
+            buffer.mark();
+            crc.update(buffer);
+            buffer.reset();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+        boolean valid = (int) crc.getValue() == map.crc(index);
+        lock.lock();
+        try {
+            received.set(index, valid);
+        } finally {
+            lock.unlock();
+        }
+        return valid;
+    }
+
+    // 모든 청크를 받았으면 저장소에 넘기고 다운로드에 쓸 파일명을 반환 (아직 빠진 청크가 있으면 null)
+    public String complete() throws IOException {
+        if (!missing().isEmpty()) {
+            return null;
+        }
+        channel.truncate(map.size()); // 이전에 더 큰 파일을 받다 만 경우
+        channel.close();
+        return store.put(part, fileName);
+    }
+
+    // 중단 (.part 파일은 재개를 위해 남겨 둠)
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
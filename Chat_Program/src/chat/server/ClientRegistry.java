@@ -0,0 +1,91 @@
+package chat.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 접속자 목록. 닉네임 -> 클라이언트 맵과 브로드캐스트용 목록을 함께 담은 읽기 전용 상태를 변경 때마다 새로 만들어
+// 통째로 교체(copy-on-write)하므로 조회/귓속말/브로드캐스트는 락 없이 항상 한 시점의 일관된 목록을 본다.
+// 입장/퇴장/닉네임 변경만 락으로 직렬화하며, 닉네임 변경은 이전 닉네임 제거와 새 닉네임 추가가 한 번의 교체로 보인다
+public class ClientRegistry {
+
+    static final ClientService[] EMPTY = new ClientService[0];
+
+    // 한 시점의 접속자 (만든 뒤 바꾸지 않음)
+    static final class View {
+        final Map<String, ClientService> byName; // 닉네임 -> 클라이언트
+        final ClientService[] clients; // 브로드캐스트용 목록
+
+        View(Map<String, ClientService> byName) {
+            this.byName = byName;
+            this.clients = byName.values().toArray(EMPTY);
+        }
+    }
+
+    volatile View view = new View(Collections.emptyMap()); // 현재 접속자 (변경 시 통째로 교체)
+    ReentrantLock writeLock = new ReentrantLock(); // 변경만 직렬화 (조회/귓속말/브로드캐스트는 잠그지 않음)
+
+    // 닉네임 등록. 이미 사용 중이면 false
+    public boolean register(String name, ClientService client) {
+        writeLock.lock();
+        try {
+            if (view.byName.containsKey(name)) {
+                return false;
+            }
+            Map<String, ClientService> next = new HashMap<>(view.byName);
+            next.put(name, client);
+            view = new View(next);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 닉네임 해제 (그 닉네임을 이 클라이언트가 가지고 있을 때만). 해제했으면 true
+    public boolean unregister(String name, ClientService client) {
+        writeLock.lock();
+        try {
+            if (view.byName.get(name) != client) {
+                return false;
+            }
+            Map<String, ClientService> next = new HashMap<>(view.byName);
+            next.remove(name);
+            view = new View(next);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 닉네임 변경. 새 닉네임이 비어 있을 때만 이전 닉네임을 빼고 새 닉네임을 넣은 목록으로 한 번에 교체
+    // (두 사용자가 같은 이름을 동시에 얻을 수 없고, 스냅샷에 한 클라이언트가 두 번 나오거나 빠지는 순간이 없음)
+    public boolean rename(ClientService client, String oldName, String newName) {
+        writeLock.lock();
+        try {
+            if (view.byName.containsKey(newName)) {
+                return false;
+            }
+            Map<String, ClientService> next = new HashMap<>(view.byName);
+            next.remove(oldName, client);
+            next.put(newName, client);
+            view = new View(next);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public ClientService get(String name) {
+        return view.byName.get(name);
+    }
+
+    public int size() {
+        return view.clients.length;
+    }
+
+    // 현재 접속자 스냅샷 (복사 없이 공유하므로 수정하면 안 됨)
+    public ClientService[] snapshot() {
+        return view.clients;
+    }
+}
@@ -1,60 +1,295 @@
 package chat.server;
 
+import chat.common.ChunkMap;
+import chat.common.Protocol;
+import chat.common.TextFrames;
+
 import java.io.*;
+import java.math.BigInteger;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class ClientService {
 
+    static final SecureRandom TOKEN_RANDOM = new SecureRandom(); // 전송 토큰 생성기
+
+    // 바이너리 명령 처리기 (opcode로 바로 찾으므로 문자열 접두어를 차례로 비교하지 않음)
+    interface FrameHandler {
+        void handle(ClientService client, Protocol.Reader in);
+    }
+
+    static final FrameHandler[] HANDLERS = new FrameHandler[16];
+
+    static {
+        HANDLERS[Protocol.CHAT] = (c, in) -> c.chatServer.sendToAll(c, in.readString());
+        HANDLERS[Protocol.WHISPER] = (c, in) -> {
+            String to = in.readString();
+            String body = in.readString();
+            c.whisper(to.trim(), body.trim(), "/to:" + to + "/" + body);
+        };
+        HANDLERS[Protocol.RENAME] = (c, in) -> {
+            String name = in.readString();
+            c.rename(name.trim(), "/rename:" + name);
+        };
+        HANDLERS[Protocol.USERS] = (c, in) -> c.chatServer.sendUsers(c);
+        HANDLERS[Protocol.LOGS] = (c, in) -> {
+            int offset = in.readSigned();
+            int count = in.readVarint(); // 0이면 메모리에 보관 중인 로그 전체
+            c.logs(Math.max(-1, offset), count == 0 ? c.chatServer.chatLogs.capacity() : count,
+                    "/logs:" + offset + ":" + count);
+        };
+        HANDLERS[Protocol.JOIN] = (c, in) -> {
+            String name = in.readString();
+            c.join(name.trim(), "/join:" + name);
+        };
+        HANDLERS[Protocol.LEAVE] = (c, in) -> c.handleLeave("/leave");
+        HANDLERS[Protocol.ROOMS] = (c, in) -> c.chatServer.sendRooms(c);
+        HANDLERS[Protocol.SEARCH] = (c, in) -> c.search(in.readString());
+        HANDLERS[Protocol.WATCH_USERS] = (c, in) -> c.watchUsers(in.readVarint() != 0);
+    }
+
     ChatServer chatServer; // 서버와의 상호작용을 위한 참조
     Socket socket; // 클라이언트와 연결된 소켓
     DataInputStream dis; // 입력 스트림
     DataOutputStream dos; // 출력 스트림
-    String chatName; // 클라이언트 닉네임
+    volatile String chatName; // 클라이언트 닉네임 (닉네임 변경 시 다른 쓰레드에서도 읽음)
+    volatile ChatRoom room; // 현재 참여 중인 방
+    NioSession session; // NIO 모드에서 사용하는 세션 (블로킹 모드에서는 null)
+    OutboundQueue outbound; // 송신 대기열 (블로킹 모드는 전용 writer 쓰레드, NIO 모드는 I/O 쓰레드가 비움)
+    String transferToken; // 파일 전송 연결 인증 토큰
+    volatile boolean binary; // 바이너리 프로토콜 사용 여부 (로그인 전에 정해지고 이후 바뀌지 않음)
+    boolean negotiated; // 접속 때 /proto: 협상을 한 클라이언트 (텍스트 모드로 남아도 새 형식의 /file: 안내를 이해함)
+    RateLimiter messageLimit, byteLimit, logsLimit, usersLimit, imageLimit; // 요청 한도 (null이면 제한 없음)
+    long pauseUntil; // 한도를 넘었을 때 수신을 다시 시작할 시각 (System.nanoTime, 수신 쓰레드/I/O 스레드만 사용)
 
     public ClientService(ChatServer chatServer, Socket socket) throws IOException {
         this.chatServer = chatServer;
         this.socket = socket;
         dis = new DataInputStream(socket.getInputStream());
-        dos = new DataOutputStream(socket.getOutputStream());
+        String first = dis.readUTF(); // 닉네임 또는 전송 연결 요청 수신
+        if (first.startsWith(TransferService.HANDSHAKE)) {
+            chatServer.startTransfer(socket.getChannel(), first, null); // 파일 전송 연결은 전송 쓰레드 풀에서 처리
+            return;
+        }
+        this.outbound = chatServer.newOutboundQueue(this);
+        initLimits();
+        dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        startWriter(); // 송신 대기열 처리 시작
 
-        chatName = dis.readUTF(); // 닉네임 수신
-        if (chatServer.chatClientInfo.containsKey(chatName)) {
-            send("[서버] 닉네임이 중복됩니다. 다른 닉네임을 입력해주세요.");
-            socket.close();
+        login(negotiate(first), added -> { // 닉네임 등록 (블로킹 모드는 이 쓰레드에서 결과를 기다림)
+            if (added) {
+                receive(); // 메시지 수신 처리
+            } else {
+                outbound.close(); // 안내 메시지 전송 후 writer가 소켓을 닫음
+            }
+        });
+    }
+
+    // NIO 모드용 생성자: 닉네임은 첫 프레임이 도착하면 login()으로 등록한다
+    ClientService(ChatServer chatServer, NioSession session) {
+        this.chatServer = chatServer;
+        this.session = session;
+        this.outbound = chatServer.newOutboundQueue(this);
+        initLimits();
+    }
+
+    void initLimits() {
+        messageLimit = chatServer.newLimiter(chatServer.messageLimit);
+        byteLimit = chatServer.newLimiter(chatServer.byteLimit);
+        logsLimit = chatServer.newLimiter(chatServer.logsLimit);
+        usersLimit = chatServer.newLimiter(chatServer.usersLimit);
+        imageLimit = chatServer.newLimiter(chatServer.imageLimit);
+    }
+
+    // 요청 한 건의 비용을 한도에서 빼고, 넘었으면 수신을 멈출 시각을 늦춤 (command는 비싼 명령의 별도 한도)
+    void charge(RateLimiter command, int bytes) {
+        long now = System.nanoTime();
+        long wait = acquire(messageLimit, 1, now);
+        wait = Math.max(wait, acquire(byteLimit, bytes, now));
+        wait = Math.max(wait, acquire(command, 1, now));
+        if (wait > 0) {
+            pauseUntil = Math.max(pauseUntil, now + wait);
+            chatServer.metrics.throttled.increment();
+        }
+    }
+
+    static long acquire(RateLimiter limit, double amount, long now) {
+        return limit == null ? 0 : limit.acquire(amount, now);
+    }
+
+    // 한도를 넘었으면 남은 대기 시간 (나노초), 아니면 0
+    long pauseNanos() {
+        long wait = pauseUntil - System.nanoTime();
+        return wait > 0 ? wait : 0;
+    }
+
+    // 첫 프레임이 프로토콜 협상(/proto:버전:닉네임)이면 응답 후 바이너리 모드로 전환하고 닉네임을 반환
+    // 지원하지 않는 버전이면 /proto:0 으로 응답하고 텍스트 모드 유지. 협상이 아니면 첫 프레임 자체가 닉네임
+    String negotiate(String first) {
+        if (!first.startsWith(Protocol.HELLO)) {
+            return first;
+        }
+        String[] parts = first.split(":", 3);
+        if (parts.length < 3) {
+            return first;
+        }
+        boolean supported = parts[1].equals(String.valueOf(Protocol.VERSION));
+        send(Protocol.HELLO + (supported ? Protocol.VERSION : 0)); // 응답까지는 텍스트 프레임
+        binary = supported;
+        negotiated = true;
+        return parts[2];
+    }
+
+    // 닉네임 등록. 결과(중복이면 false)는 등록을 마친 뒤 then으로 전달
+    void login(String name, Consumer<Boolean> then) {
+        chatName = name;
+        if (name.length() > ChatServer.MAX_NAME_CHARS) {
+            send("[서버] 닉네임은 " + ChatServer.MAX_NAME_CHARS + "자까지 사용할 수 있습니다.");
+            then.accept(false);
             return;
         }
-        chatServer.addClientInfo(this); // 서버에 클라이언트 등록
-        chatServer.sendToAll(this, "[입장] " + chatName);
-        receive(); // 메시지 수신 처리
+        await(chatServer.addClientInfo(this), added -> { // 서버에 클라이언트 등록 (중복 확인과 등록을 한 번에)
+            if (!added) {
+                send("[서버] 닉네임이 중복됩니다. 다른 닉네임을 입력해주세요.");
+                then.accept(false);
+                return;
+            }
+            chatServer.joinClient(this);
+            transferToken = new BigInteger(128, TOKEN_RANDOM).toString(36);
+            chatServer.transferTokens.put(transferToken, this);
+            sendSession(transferToken); // 파일 전송 연결에 사용할 토큰 전달
+            chatServer.sendToAll(this, "[입장] " + chatName);
+            if (chatServer.replayOnJoin > 0) {
+                chatServer.showLogs(this, -1, chatServer.replayOnJoin); // 최근 대화 따라잡기
+            }
+            then.accept(true);
+        });
+    }
+
+    // 나중에 완료되는 결과(클러스터 노드의 닉네임 확인 응답)를 받은 뒤 이어서 처리. 블로킹 모드는 이 쓰레드에서 기다리고,
+    // NIO 모드는 I/O 스레드를 막지 않도록 그동안 이 연결의 프레임 해석을 멈췄다가 결과가 오면 I/O 스레드에서 실행
+    <T> void await(CompletableFuture<T> result, Consumer<T> then) {
+        if (session == null || result.isDone()) {
+            then.accept(result.join());
+        } else {
+            session.await(result, then);
+        }
     }
 
     public void receive() {
-        new Thread(() -> {
+        chatServer.newThread(() -> {
             try {
                 while (true) {
-                    String msg = dis.readUTF(); // 클라이언트 메시지 수신
-                    if (msg.startsWith("/rename:")) {
-                        handleRename(msg); // 닉네임 변경 처리
-                    } else if (msg.startsWith("/to:")) {
-                        handleDirectMessage(msg); // 귓속말 처리
-                    } else if (msg.startsWith("/logs")) {
-                        handleLogsCommand(); // 로그 요청 처리
-                    } else if (msg.startsWith("/img:")) {
-                        handleImageTransfer(msg); // 이미지 전송 처리
-                    } else if (msg.startsWith("/download:")) {
-                        handleDownload(msg); // 이미지 다운로드 처리
-                    } else if (msg.startsWith("/users")) {
-                        chatServer.sendUsers(this); // 현재 접속자 목록 전송
+                    if (binary) {
+                        handleFrame(Protocol.readFrame(dis)); // 바이너리 명령 수신
                     } else {
-                        chatServer.sendToAll(this, msg); // 일반 메시지 브로드캐스트
+                        handleMessage(TextFrames.read(dis)); // 클라이언트 메시지 수신 (64KB를 넘으면 조각을 합쳐서)
+                    }
+                    long wait = pauseNanos();
+                    if (wait > 0) { // 한도 초과: 그동안 소켓을 읽지 않아 TCP 흐름 제어로 보내는 쪽이 멈춤
+                        chatServer.metrics.throttledNanos.add(wait);
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
                     }
                 }
-            } catch (IOException e) {
+            } catch (IOException | InterruptedException e) {
                 System.out.println(chatName + " 연결 종료");
             } finally {
                 quit(); // 클라이언트 종료 처리
             }
-        }).start(); // 별도 쓰레드에서 실행
+        }).start(); // 별도 쓰레드에서 실행 (가상 쓰레드 모드에서는 가상 쓰레드)
+    }
+
+    // 송신 대기열을 비우는 writer 쓰레드 (블로킹 모드). 대기열이 빌 때만 flush 하여 여러 프레임을 한 번에 전송
+    void startWriter() {
+        chatServer.newThread(() -> {
+            WritableByteChannel out = Channels.newChannel(dos);
+            try {
+                Object item;
+                while ((item = outbound.take()) != null) {
+                    if (item instanceof File) {
+                        writeFile((File) item);
+                    } else if (item instanceof OutboundQueue.Body) {
+                        writeBody(((OutboundQueue.Body) item).data);
+                    } else {
+                        out.write((ByteBuffer) item);
+                    }
+                    if (outbound.depth() == 0) {
+                        dos.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // 연결 종료: 수신 쓰레드가 quit()을 처리
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+    }
+
+    // 바이너리 프레임 처리 (frame은 opcode부터 시작, 처리기는 반환 전에 필요한 필드를 모두 읽음)
+    void handleFrame(ByteBuffer frame) {
+        chatServer.metrics.messagesIn.mark();
+        try {
+            int size = frame.remaining();
+            Protocol.Reader in = new Protocol.Reader(frame);
+            int opcode = in.opcode & 0xFF;
+            charge(opcode == Protocol.LOGS || opcode == Protocol.SEARCH ? logsLimit
+                    : opcode == Protocol.USERS || opcode == Protocol.ROOMS || opcode == Protocol.WATCH_USERS ? usersLimit
+                    : null, size);
+            FrameHandler handler = opcode < HANDLERS.length ? HANDLERS[opcode] : null;
+            if (handler == null) {
+                send("[서버] 알 수 없는 명령입니다: " + opcode);
+                return;
+            }
+            handler.handle(this, in);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            send("[서버] 명령 형식 오류입니다.");
+        }
+    }
+
+    // 수신한 메시지를 명령어별로 처리
+    void handleMessage(String msg) {
+        chatServer.metrics.messagesIn.mark();
+        charge(msg.startsWith("/logs") || msg.startsWith("/search:") ? logsLimit
+                : msg.startsWith("/users") || msg.equals("/rooms") ? usersLimit
+                : msg.startsWith("/img:") ? imageLimit : null, TextFrames.utfLength(msg));
+        if (msg.startsWith("/rename:")) {
+            handleRename(msg); // 닉네임 변경 처리
+        } else if (msg.startsWith("/to:")) {
+            handleDirectMessage(msg); // 귓속말 처리
+        } else if (msg.startsWith("/logs")) {
+            handleLogsCommand(msg); // 로그 요청 처리
+        } else if (msg.startsWith("/search:")) {
+            search(msg.substring("/search:".length())); // 저장된 메시지 검색
+        } else if (msg.startsWith("/img:")) {
+            handleImageTransfer(msg); // 이미지 전송 처리
+        } else if (msg.startsWith("/download:")) {
+            handleDownload(msg); // 이미지 다운로드 처리
+        } else if (msg.equals("/users:watch") || msg.equals("/users:unwatch")) {
+            watchUsers(msg.equals("/users:watch")); // 접속자 변경 구독/해제
+        } else if (msg.startsWith("/users")) {
+            chatServer.sendUsers(this); // 현재 접속자 목록 전송
+        } else if (msg.startsWith("/join:")) {
+            handleJoin(msg); // 방 이동
+        } else if (msg.equals("/leave")) {
+            handleLeave(msg); // 로비로 돌아가기
+        } else if (msg.equals("/rooms")) {
+            chatServer.sendRooms(this); // 방 목록 전송
+        } else {
+            chatServer.sendToAll(this, msg); // 일반 메시지 브로드캐스트
+        }
     }
 
     // 닉네임 변경 처리
@@ -64,24 +299,57 @@ public class ClientService {
             send("[서버] 닉네임 변경 형식이 잘못되었습니다. 사용법: /rename:새닉네임");
             return;
         }
-        String newName = parts[1].trim();
+        rename(parts[1].trim(), msg);
+    }
+
+    void rename(String newName, String msg) {
         if (newName.isEmpty()) {
             send("[서버] 닉네임은 공백일 수 없습니다.");
             return;
         }
-        synchronized (chatServer) {
-            if (!chatServer.chatClientInfo.containsKey(newName)) {
-                chatServer.removeClientInfo(this);
-                String oldName = chatName;
-                this.chatName = newName;
-                chatServer.addClientInfo(this);
+        if (newName.length() > ChatServer.MAX_NAME_CHARS) {
+            send("[서버] 닉네임은 " + ChatServer.MAX_NAME_CHARS + "자까지 사용할 수 있습니다.");
+            return;
+        }
+        String oldName = chatName;
+        await(chatServer.renameClient(this, newName), renamed -> {
+            if (renamed) { // 새 닉네임 선점에 성공한 경우만 변경
+                chatServer.clientRenamed(this, oldName, newName);
                 chatServer.sendToAll(this, "[서버] " + oldName + "이(가) " + newName + "으로 닉네임을 변경했습니다.");
                 chatServer.logCommand(oldName, msg, "닉네임 변경 성공");
             } else {
                 send("[서버] 닉네임 중복. 변경 실패.");
                 chatServer.logCommand(chatName, msg, "닉네임 변경 실패 - 중복");
             }
+        });
+    }
+
+    // 방 이동 처리 (형식: /join:방이름)
+    public void handleJoin(String msg) {
+        join(msg.substring("/join:".length()).trim(), msg);
+    }
+
+    void join(String name, String msg) {
+        if (name.isEmpty() || name.contains(" ") || name.length() > ChatServer.MAX_NAME_CHARS) {
+            send("[서버] 방 이름 형식 오류. 사용법: /join:방이름 (공백 없이 " + ChatServer.MAX_NAME_CHARS + "자까지)");
+            return;
+        }
+        if (room != null && room.name.equals(name)) {
+            send("[서버] 이미 " + name + " 방에 있습니다.");
+            return;
         }
+        chatServer.changeRoom(this, name);
+        chatServer.logCommand(chatName, msg, "방 이동");
+    }
+
+    // 로비로 돌아가기
+    public void handleLeave(String msg) {
+        if (room == null || room.name.equals(ChatServer.LOBBY)) {
+            send("[서버] 이미 로비에 있습니다.");
+            return;
+        }
+        chatServer.changeRoom(this, ChatServer.LOBBY);
+        chatServer.logCommand(chatName, msg, "로비로 이동");
     }
 
     // 귓속말 처리
@@ -100,27 +368,39 @@ public class ClientService {
             }
             String recipient = commandContent.substring(0, slashIndex).trim();
             String message = commandContent.substring(slashIndex + 1).trim();
+            whisper(recipient, message, msg);
+        } catch (Exception e) {
+            send("[서버] 귓속말 처리 중 오류가 발생했습니다.");
+        }
+    }
 
-            if (recipient.isEmpty()) {
-                send("[서버] 수신자 닉네임이 비어있습니다.");
-                return;
-            }
+    void whisper(String recipient, String message, String msg) {
+        if (recipient.isEmpty()) {
+            send("[서버] 수신자 닉네임이 비어있습니다.");
+            return;
+        }
 
-            synchronized (chatServer) {
-                if (chatServer.chatClientInfo.containsKey(recipient)) {
-                    ClientService recipientService = chatServer.chatClientInfo.get(recipient);
-                    String formattedMsg = String.format("[귓속말][%s](%s): %s",
-                            chatName, chatServer.timeFormat.format(System.currentTimeMillis()), message);
-                    recipientService.send(formattedMsg);
-                    send("[귓속말] " + recipient + "에게 메시지를 보냈습니다.");
-                    chatServer.logCommand(chatName, msg, "귓속말 전송 성공");
-                } else {
-                    send("[서버] 수신자가 존재하지 않습니다.");
-                    chatServer.logCommand(chatName, msg, "귓속말 전송 실패 - 수신자 없음");
-                }
+        ClientService recipientService = chatServer.clients.get(recipient); // 락 없이 조회
+        long time = System.currentTimeMillis();
+        if (recipientService != null
+                || (chatServer.cluster != null && chatServer.cluster.whisper(recipient, chatName, time, message))) { // 다른 노드의 접속자
+            if (recipientService != null) {
+                recipientService.deliverWhisper(chatName, time, message);
             }
-        } catch (Exception e) {
-            send("[서버] 귓속말 처리 중 오류가 발생했습니다.");
+            send("[귓속말] " + recipient + "에게 메시지를 보냈습니다.");
+            chatServer.logCommand(chatName, msg, "귓속말 전송 성공");
+        } else {
+            send("[서버] 수신자가 존재하지 않습니다.");
+            chatServer.logCommand(chatName, msg, "귓속말 전송 실패 - 수신자 없음");
+        }
+    }
+
+    // 귓속말 수신 (다른 노드에서 온 귓속말도 여기로)
+    void deliverWhisper(String from, long time, String message) {
+        if (binary) {
+            sendFrame(messageFrame(Protocol.WHISPER_MESSAGE, from, time, message));
+        } else {
+            send("[귓속말]" + chatServer.formatChat(from, time, message));
         }
     }
 
@@ -139,30 +419,65 @@ public class ClientService {
             return;
         }
 
+        if (session != null) {
+            session.beginUpload(file.getName(), msg); // 이후 바이트는 NIO 세션이 파일로 기록
+            return;
+        }
+
         // 이미지 데이터 수신
         try {
             long fileSize = dis.readLong(); // 파일 크기 수신
-            byte[] buffer = new byte[4096];
-            FileOutputStream fos = new FileOutputStream("server_" + file.getName()); // 서버에 파일 저장
+            File part = chatServer.blobStore.partFile(file.getName()); // 다 받은 뒤에 저장소로 옮김
+            try (FileChannel fc = FileChannel.open(part.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long received = receiveFile(fc, fileSize);
+                chatServer.metrics.uploadBytes.add(received);
+                if (received < fileSize) {
+                    throw new EOFException("연결이 끊겼습니다");
+                }
+            }
+            imageReceived(chatServer.blobStore.put(part, file.getName()), msg);
+        } catch (IOException e) {
+            imageFailed(msg, e);
+        }
+    }
 
-            long totalRead = 0;
+    // 소켓에서 파일로 fileSize 바이트 수신하고 받은 바이트 수를 반환 (소켓 채널이 있으면 transferFrom으로 힙을 거치지 않고 복사)
+    long receiveFile(FileChannel fc, long fileSize) throws IOException {
+        SocketChannel sc = socket.getChannel();
+        long totalRead = 0;
+        if (sc != null) {
             while (totalRead < fileSize) {
-                int bytesRead = dis.read(buffer, 0, buffer.length); // 데이터 수신
-                if (bytesRead < 0) break; // EOF
-                fos.write(buffer, 0, bytesRead); // 파일에 쓰기
-                totalRead += bytesRead; // 진행 상황 업데이트
-            }
-            fos.close();
-            send("[서버] 이미지 전송을 성공적으로 받았습니다: " + file.getName());
-            chatServer.logCommand(chatName, msg, "이미지 전송 성공");
-
-            // 모든 클라이언트에게 이미지 전송 알림
-            String imageMsg = String.format("[이미지] %s가 이미지를 전송했습니다(다운을 원하시면 /download:%s 를 입력하세요.)", chatName, file.getName());
-            chatServer.sendToAll(this, imageMsg);
-        } catch (IOException e) {
-            send("[서버] 이미지 전송 중 오류가 발생했습니다: " + e.getMessage());
-            chatServer.logCommand(chatName, msg, "이미지 전송 실패");
+                long transferred = fc.transferFrom(sc, totalRead, fileSize - totalRead);
+                if (transferred <= 0) break; // EOF
+                totalRead += transferred;
+            }
+            return totalRead;
         }
+        byte[] buffer = new byte[chatServer.transferBufferSize];
+        while (totalRead < fileSize) {
+            int bytesRead = dis.read(buffer, 0, (int) Math.min(buffer.length, fileSize - totalRead)); // 데이터 수신
+            if (bytesRead < 0) break; // EOF
+            fc.write(ByteBuffer.wrap(buffer, 0, bytesRead), totalRead); // 파일에 쓰기
+            totalRead += bytesRead; // 진행 상황 업데이트
+        }
+        return totalRead;
+    }
+
+    // 이미지 수신 완료 처리
+    void imageReceived(String fileName, String msg) {
+        send("[서버] 이미지 전송을 성공적으로 받았습니다: " + fileName);
+        chatServer.logCommand(chatName, msg, "이미지 전송 성공");
+
+        // 모든 클라이언트에게 이미지 전송 알림
+        String imageMsg = String.format("[이미지] %s가 이미지를 전송했습니다(다운을 원하시면 /download:%s 를 입력하세요.)", chatName, fileName);
+        chatServer.sendToAll(this, imageMsg);
+    }
+
+    // 이미지 수신 실패 처리
+    void imageFailed(String msg, IOException e) {
+        send("[서버] 이미지 전송 중 오류가 발생했습니다: " + e.getMessage());
+        chatServer.logCommand(chatName, msg, "이미지 전송 실패");
     }
 
     // 이미지 다운로드 처리 (yes/no 단계 제거)
@@ -177,21 +492,18 @@ public class ClientService {
         // 파일명에서 경로를 제거하여 저장할 파일 이름만 추출
         File file = new File(fileName);
         String actualFileName = file.getName();
-        File actualFile = new File("server_" + actualFileName); // 서버에 저장된 파일 이름
+        File actualFile = chatServer.blobStore.file(actualFileName); // 서버에 저장된 파일
 
-        if (!actualFile.exists()) {
+        if (actualFile == null) {
             send("[서버] 파일이 존재하지 않습니다: " + actualFileName);
             chatServer.logCommand(chatName, msg, "다운로드 실패 - 파일 없음");
             return;
         }
 
         try {
-            // 클라이언트에게 파일 정보 전송
-            sendFileInfo(actualFileName, actualFile.length());
-
-            // 클라이언트가 파일 수신을 승인한 경우 파일 전송
+            // 클라이언트에게 파일 정보와 파일 본문 전송
             // 여기서 'yes/no' 확인 단계를 제거하고 바로 파일을 전송합니다.
-            sendFile(actualFile);
+            sendFile(actualFile, fileInfo(actualFileName, chatServer.chunkMap(actualFile)));
             send("[서버] 파일 전송 완료: " + actualFileName);
             chatServer.logCommand(chatName, msg, "파일 다운로드 완료");
         } catch (IOException e) {
@@ -201,35 +513,168 @@ public class ClientService {
     }
 
     // 파일 정보 전송 메서드
-    private void sendFileInfo(String fileName, long fileSize) throws IOException {
-        // 특별한 메시지 형식으로 파일 전송 시작을 알림
-        String fileInfoMsg = String.format("/file:%s:%d", fileName, fileSize);
-        send(fileInfoMsg);
+    private String fileInfo(String fileName, ChunkMap map) {
+        // 특별한 메시지 형식으로 파일 전송 시작을 알림 (/file:파일명:파일크기:청크크기:crc,... 클라이언트가 받은 뒤 청크별로 검증)
+        // 협상을 하지 않은 기존 클라이언트는 /file:파일명:파일크기 만 해석하므로 이전 형식으로 보냄
+        return negotiated ? "/file:" + fileName + ":" + map : "/file:" + fileName + ":" + map.size();
     }
 
-    // 파일 전송 메서드
-    public void sendFile(File file) throws IOException {
-        FileInputStream fis = new FileInputStream(file);
-        byte[] buffer = new byte[4096];
-        int read;
-        while ((read = fis.read(buffer)) != -1) {
-            dos.write(buffer, 0, read);
+    // 파일 전송 메서드. /file 안내 바로 뒤에 본문이 오도록 둘을 한 번에 대기열에 넣음
+    // (안내 프레임도 정책에 의해 버려지지 않도록 본문과 같은 Body 항목으로 넣음)
+    public void sendFile(File file, String fileInfo) throws IOException {
+        ByteBuffer cached = chatServer.blobStore.cached(file); // 많이 받는 파일은 메모리 캐시에서 전송
+        if (!outbound.put(new OutboundQueue.Body(frame(fileInfo)), cached != null ? new OutboundQueue.Body(cached) : file)) {
+            throw new IOException("송신 대기열이 가득 찼습니다");
+        }
+        if (session != null) {
+            session.scheduleFlush();
+        }
+    }
+
+    // 파일 본문을 소켓에 기록 (writer 쓰레드에서 호출). 소켓 채널이 있으면 transferTo로 제로 카피
+    void writeFile(File file) throws IOException {
+        dos.flush(); // 앞선 /file 안내 프레임을 먼저 전송
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = fc.size();
+            long position = 0;
+            chatServer.metrics.downloadBytes.add(size);
+            SocketChannel sc = socket.getChannel();
+            if (sc != null) {
+                while (position < size) {
+                    position += fc.transferTo(position, size - position, sc);
+                }
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(chatServer.transferBufferSize);
+            while (fc.read(buffer) > 0) {
+                buffer.flip();
+                dos.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+    }
+
+    // 캐시된 파일 본문을 소켓에 기록 (writer 쓰레드에서 호출)
+    void writeBody(ByteBuffer data) throws IOException {
+        dos.flush(); // 앞선 /file 안내 프레임을 먼저 전송
+        chatServer.metrics.downloadBytes.add(data.remaining());
+        SocketChannel sc = socket.getChannel();
+        while (data.hasRemaining()) {
+            if (sc != null) {
+                sc.write(data);
+            } else {
+                Channels.newChannel(dos).write(data);
+            }
         }
-        dos.flush();
-        fis.close();
     }
 
     // 로그 요청 처리
-    public void handleLogsCommand() {
-        chatServer.logCommand(chatName, "/logs", "로그 요청");
-        chatServer.showLogs(this); // 채팅 로그 출력
+    public void handleLogsCommand(String msg) {
+        // 형식: /logs (전체), /logs:개수 (최근 개수), /logs:시작:개수 (시작 번호부터, 번호는 응답 머리말에 표시)
+        String[] parts = msg.split(":");
+        int offset = -1;
+        int count = chatServer.chatLogs.capacity(); // 메모리에 보관 중인 로그 전체
+        try {
+            if (parts.length == 2) {
+                count = Integer.parseInt(parts[1].trim());
+            } else if (parts.length == 3) {
+                offset = Integer.parseInt(parts[1].trim());
+                count = Integer.parseInt(parts[2].trim());
+            } else if (parts.length > 3 || !parts[0].equals("/logs")) {
+                throw new NumberFormatException();
+            }
+            if (count < 0 || (parts.length == 3 && offset < 0)) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            send("[서버] 로그 요청 형식 오류. 사용법: /logs, /logs:개수, /logs:시작:개수");
+            return;
+        }
+        logs(offset, count, msg);
+    }
+
+    void logs(int offset, int count, String msg) {
+        chatServer.logCommand(chatName, msg, "로그 요청");
+        await(chatServer.readStore(() -> chatServer.showLogs(this, offset, count)), done -> { }); // 채팅 로그 출력 (저장소 읽기는 별도 쓰레드)
     }
 
-    // 메시지 전송 메서드
+    // 접속자 변경 구독 (구독하면 현재 목록을 받은 뒤 입장/퇴장/닉네임 변경만 받음)
+    void watchUsers(boolean watch) {
+        if (watch) {
+            chatServer.roster.watch(this);
+        } else {
+            chatServer.roster.unwatch(this);
+            send("[서버] 접속자 변경 알림을 해제했습니다.");
+        }
+    }
+
+    // 저장된 메시지 검색 (형식: /search:검색어 [from:닉네임] [since:시각] [until:시각] [page:번호])
+    void search(String query) {
+        chatServer.logCommand(chatName, "/search:" + query, "검색 요청");
+        await(chatServer.readStore(() -> chatServer.search(this, query)), done -> { });
+    }
+
+    // 메시지 전송 메서드 (바이너리 클라이언트에는 안내 프레임으로)
     public void send(String msg) {
+        sendFrame(frame(msg)); // 메시지 전송
+    }
+
+    // 안내 문장을 이 클라이언트의 프로토콜에 맞는 프레임으로 인코딩 (대기열에는 넣지 않음)
+    ByteBuffer frame(String msg) {
+        return binary ? noticeFrame(msg) : OutboundQueue.encode(msg);
+    }
+
+    // 서버 종료 전 재접속 안내 (delayMillis 후 다시 접속, 실패하면 클라이언트가 간격을 늘려 가며 재시도)
+    // 협상을 하지 않은 기존 클라이언트는 /reconnect: 를 일반 메시지로 출력하므로 보내지 않음
+    void sendReconnect(long delayMillis) {
+        if (binary) {
+            sendFrame(new Protocol.Writer(Protocol.RECONNECT, 10).writeLong(delayMillis).finish());
+        } else if (negotiated) {
+            send("/reconnect:" + delayMillis);
+        }
+    }
+
+    // 파일 전송 연결 토큰 전송
+    void sendSession(String token) {
+        if (binary) {
+            sendFrame(new Protocol.Writer(Protocol.SESSION, token.length() + 1).writeString(token).finish());
+        } else {
+            send("/session:" + token);
+        }
+    }
+
+    // 바이너리 대화/귓속말 프레임
+    static ByteBuffer messageFrame(byte opcode, String from, long time, String body) {
+        return new Protocol.Writer(opcode, from.length() * 3 + body.length() * 3 + 12)
+                .writeString(from).writeLong(time).writeString(body).finish();
+    }
+
+    // 바이너리 안내 프레임
+    static ByteBuffer noticeFrame(String text) {
+        return new Protocol.Writer(Protocol.NOTICE, text.length() * 3 + 5).writeString(text).finish();
+    }
+
+    // 인코딩된 프레임을 송신 대기열에 추가 (소켓에 쓰지 않으므로 블로킹되지 않음)
+    void sendFrame(ByteBuffer frame) {
+        if (!outbound.offer(frame)) {
+            System.out.println("[채팅서버] " + chatName + " 수신 지연으로 연결 종료 (대기 " + outbound.depth() + "개)");
+            disconnect();
+            return;
+        }
+        chatServer.metrics.messagesOut.mark();
+        if (session != null) {
+            session.scheduleFlush();
+        }
+    }
+
+    // 연결을 강제로 끊음 (수신 쪽에서 종료가 감지되어 quit()이 호출됨)
+    void disconnect() {
+        if (session != null) {
+            session.worker.execute(session::close);
+            return;
+        }
         try {
-            dos.writeUTF(msg); // 메시지 전송
-            dos.flush();
+            socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -237,11 +682,17 @@ public class ClientService {
 
     // 클라이언트 종료 처리
     public void quit() {
+        chatServer.roster.unwatch(this);
         chatServer.removeClientInfo(this);
+        chatServer.transferTokens.remove(transferToken);
+        outbound.clear(); // writer 쓰레드 종료
+        if (session != null) {
+            session.close();
+            return;
+        }
         try {
             dis.close();
-            dos.close();
-            socket.close();
+            socket.close(); // 출력 스트림은 writer 쓰레드가 소유하므로 소켓만 닫음
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,349 @@
+package chat.server;
+
+import chat.common.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 여러 서버 노드가 하나의 채팅 공간을 나누어 맡도록 연결 (노드 사이의 전달은 ClusterBus)
+//
+// - 접속자 목록: 노드마다 자기 접속자의 입장/퇴장/닉네임 변경/방 이동을 다른 노드에 알리고, 받은 목록(roster)으로
+//   /users와 귓속말 대상 노드를 찾는다. 방마다 참여자가 있는 노드만 기록해 두어 방 메시지는 그 노드에만 보낸다
+// - 닉네임 중복: 닉네임마다 해시로 정한 담당 노드(home)가 소유자를 기록하고 선점 요청(CLAIM)에 답한다.
+//   담당 노드와 연결되지 않았으면 알고 있는 목록으로만 확인한다 (연결되면 소유 기록을 다시 보냄)
+//
+// 설정: -Dchat.cluster.node=a -Dchat.cluster.nodes=a@127.0.0.1:19001,b@127.0.0.1:19002
+//       노드끼리 같은 비밀키를 CHAT_CLUSTER_SECRET 환경 변수(또는 -Dchat.cluster.secret)로 지정
+public class Cluster implements ClusterBus.Listener {
+
+    // 노드 사이 프레임 opcode (클라이언트 프로토콜과 겹치지 않는 범위)
+    static final byte USER_JOIN = 0x61; // 닉네임, 방
+    static final byte USER_LEAVE = 0x62; // 닉네임
+    static final byte USER_RENAME = 0x63; // 이전 닉네임, 새 닉네임
+    static final byte USER_ROOM = 0x64; // 닉네임, 방
+    static final byte ROOM_MESSAGE = 0x65; // 방, 표시 문장, 보낸 사람, 시각, 본문 (본문이 없으면 안내 문장)
+    static final byte WHISPER = 0x66; // 받는 사람, 보낸 사람, 시각, 본문
+    static final byte CLAIM = 0x67; // 요청 번호 (0이면 응답 불필요), 닉네임
+    static final byte CLAIM_REPLY = 0x68; // 요청 번호, 성공 여부
+    static final byte RELEASE = 0x69; // 닉네임
+
+    // 다른 노드의 접속자
+    static class RemoteUser {
+        final String node;
+        volatile String room;
+
+        RemoteUser(String node, String room) {
+            this.node = node;
+            this.room = room;
+        }
+    }
+
+    ChatServer chatServer;
+    String self; // 이 노드 이름
+    List<String> nodes; // 전체 노드 이름 (정렬, 닉네임 담당 노드 계산용)
+    ClusterBus bus;
+    long timeoutMillis = Long.getLong("chat.cluster.timeoutMillis", 2000); // 닉네임 선점 응답 대기 시간
+    Map<String, RemoteUser> roster = new ConcurrentHashMap<>(); // 다른 노드의 접속자 (닉네임 -> 노드, 방)
+    Map<String, Map<String, Integer>> roomNodes = new ConcurrentHashMap<>(); // 방 -> (노드 -> 참여자 수), 값은 교체만 함
+    Map<String, String> owners = new ConcurrentHashMap<>(); // 이 노드가 담당하는 닉네임의 소유 노드
+    Map<Long, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>(); // 응답을 기다리는 선점 요청
+    AtomicLong requestIds = new AtomicLong();
+
+    public Cluster(ChatServer chatServer, String self, List<String> nodes, ClusterBus bus) {
+        this.chatServer = chatServer;
+        this.self = self;
+        this.nodes = new ArrayList<>(nodes);
+        Collections.sort(this.nodes);
+        this.bus = bus;
+    }
+
+    // 시스템 속성으로 클러스터 생성 (chat.cluster.node가 없으면 null: 단일 서버)
+    static Cluster fromProperties(ChatServer chatServer) {
+        String self = System.getProperty("chat.cluster.node", "");
+        if (self.isEmpty()) {
+            return null;
+        }
+        Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+        for (String entry : System.getProperty("chat.cluster.nodes", "").split(",")) {
+            int at = entry.indexOf('@');
+            int colon = entry.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("chat.cluster.nodes 형식 오류 (이름@주소:포트): " + entry);
+            }
+            addresses.put(entry.substring(0, at).trim(),
+                    new InetSocketAddress(entry.substring(at + 1, colon).trim(), Integer.parseInt(entry.substring(colon + 1).trim())));
+        }
+        if (!addresses.containsKey(self)) {
+            throw new IllegalArgumentException("chat.cluster.nodes에 이 노드(" + self + ")가 없습니다");
+        }
+        String secret = System.getProperty("chat.cluster.secret", System.getenv("CHAT_CLUSTER_SECRET"));
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("클러스터 비밀키가 없습니다 (CHAT_CLUSTER_SECRET 환경 변수 또는 chat.cluster.secret)");
+        }
+        TcpBus bus = new TcpBus(addresses, Integer.getInteger("chat.cluster.queueCapacity", 262144), secret);
+        return new Cluster(chatServer, self, new ArrayList<>(addresses.keySet()), bus);
+    }
+
+    public void start() throws IOException {
+        bus.start(self, this);
+        System.out.println("[클러스터] 노드 " + self + " 시작 (전체 " + nodes + ")");
+    }
+
+    public void close() {
+        bus.close();
+    }
+
+    // 닉네임을 담당하는 노드
+    String homeOf(String name) {
+        return nodes.get(Math.floorMod(name.hashCode(), nodes.size()));
+    }
+
+    // 클러스터 전체에서 닉네임 선점 (이 노드의 접속자 목록에는 이미 등록된 상태에서 호출).
+    // 담당 노드가 다른 노드면 응답을 기다리지 않고 반환하며, 결과는 응답이 올 때(timeoutMillis 안에 없으면 false) 완료된다
+    public CompletableFuture<Boolean> claim(String name) {
+        String home = homeOf(name);
+        if (home.equals(self)) {
+            return CompletableFuture.completedFuture(owners.putIfAbsent(name, self) == null);
+        }
+        if (!bus.isConnected(home)) {
+            return CompletableFuture.completedFuture(!roster.containsKey(name)); // 담당 노드가 없으면 알고 있는 목록으로만 확인
+        }
+        long id = requestIds.incrementAndGet();
+        CompletableFuture<Boolean> reply = new CompletableFuture<>();
+        pending.put(id, reply);
+        bus.send(home, new Protocol.Writer(CLAIM, 16 + name.length() * 3).writeLong(id).writeString(name).finish());
+        return reply.completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS).thenApply(granted -> {
+            pending.remove(id);
+            if (granted == null) {
+                System.out.println("[클러스터] 닉네임 확인 응답 없음: " + name + " (담당 노드 " + home + ")");
+                release(name); // 늦게 성공했을 수 있으므로 놓음
+                return false;
+            }
+            return granted;
+        });
+    }
+
+    // 닉네임 소유 해제
+    public void release(String name) {
+        String home = homeOf(name);
+        if (home.equals(self)) {
+            owners.remove(name, self);
+        } else {
+            bus.send(home, new Protocol.Writer(RELEASE, 8 + name.length() * 3).writeString(name).finish());
+        }
+    }
+
+    // 이 노드의 접속자 입장/퇴장/변경/방 이동 알림
+    public void userJoined(String name, String room) {
+        bus.publish(new Protocol.Writer(USER_JOIN, 16).writeString(name).writeString(room).finish());
+    }
+
+    public void userLeft(String name) {
+        release(name);
+        bus.publish(new Protocol.Writer(USER_LEAVE, 16).writeString(name).finish());
+    }
+
+    public void userRenamed(String oldName, String newName) {
+        release(oldName);
+        bus.publish(new Protocol.Writer(USER_RENAME, 32).writeString(oldName).writeString(newName).finish());
+    }
+
+    public void userMoved(String name, String room) {
+        bus.publish(new Protocol.Writer(USER_ROOM, 16).writeString(name).writeString(room).finish());
+    }
+
+    // 방 메시지를 그 방에 참여자가 있는 다른 노드에만 전달 (프레임은 한 번만 만듦)
+    public void roomMessage(String room, String msg, String from, long time, String body) {
+        Map<String, Integer> targets = roomNodes.get(room);
+        if (targets == null) {
+            return;
+        }
+        ByteBuffer frame = new Protocol.Writer(ROOM_MESSAGE, 32 + msg.length() * 3)
+                .writeString(room).writeString(msg).writeString(from).writeLong(time)
+                .writeString(body == null ? "" : body).finish();
+        for (String node : targets.keySet()) {
+            bus.send(node, frame);
+        }
+    }
+
+    // 다른 노드의 접속자에게 귓속말 (받는 사람이 목록에 없으면 false)
+    public boolean whisper(String to, String from, long time, String body) {
+        RemoteUser user = roster.get(to);
+        if (user == null) {
+            return false;
+        }
+        bus.send(user.node, new Protocol.Writer(WHISPER, 32 + body.length() * 3)
+                .writeString(to).writeString(from).writeLong(time).writeString(body).finish());
+        return true;
+    }
+
+    // 다른 노드의 접속자 닉네임
+    public Iterable<String> remoteNames() {
+        return roster.keySet();
+    }
+
+    public int remoteCount() {
+        return roster.size();
+    }
+
+    // 방별 노드 참여자 수 변경 (값 맵은 복사해서 교체하므로 읽는 쪽은 잠그지 않음)
+    void adjust(String room, String node, int delta) {
+        roomNodes.compute(room, (r, counts) -> {
+            Map<String, Integer> copy = counts == null ? new HashMap<>() : new HashMap<>(counts);
+            copy.merge(node, delta, (a, b) -> a + b == 0 ? null : a + b);
+            return copy.isEmpty() ? null : copy;
+        });
+    }
+
+    // 다른 노드 접속자 추가. 새 닉네임이면 true
+    boolean addRemote(String name, RemoteUser user) {
+        RemoteUser previous = roster.put(name, user);
+        if (previous != null) {
+            adjust(previous.room, previous.node, -1);
+        }
+        adjust(user.room, user.node, 1);
+        return previous == null;
+    }
+
+    // 다른 노드 접속자 제거. 있었으면 true
+    boolean removeRemote(String name) {
+        RemoteUser user = roster.remove(name);
+        if (user != null) {
+            adjust(user.room, user.node, -1);
+        }
+        return user != null;
+    }
+
+    // 새로 연결된 노드에 이 노드의 접속자 목록과 그 노드가 담당하는 닉네임 소유 기록을 보냄
+    @Override
+    public void onConnected(String node) {
+        for (ClientService client : chatServer.clients.snapshot()) {
+            String name = client.chatName;
+            ChatRoom room = client.room;
+            bus.send(node, new Protocol.Writer(USER_JOIN, 16).writeString(name)
+                    .writeString(room != null ? room.name : ChatServer.LOBBY).finish());
+            if (homeOf(name).equals(node)) {
+                bus.send(node, new Protocol.Writer(CLAIM, 16).writeLong(0).writeString(name).finish());
+            }
+        }
+    }
+
+    // 노드가 끊기거나 다시 시작됨: 그 노드에게서 받은 접속자와 소유 기록을 버림
+    @Override
+    public void onReset(String node) {
+        for (Map.Entry<String, RemoteUser> entry : roster.entrySet()) {
+            if (entry.getValue().node.equals(node) && removeRemote(entry.getKey())) {
+                chatServer.roster.left(entry.getKey());
+            }
+        }
+        owners.values().removeIf(node::equals);
+    }
+
+    @Override
+    public void onFrame(String node, ByteBuffer frame) {
+        Protocol.Reader in = new Protocol.Reader(frame);
+        switch (in.opcode) {
+            case USER_JOIN: {
+                String name = in.readString();
+                if (addRemote(name, new RemoteUser(node, in.readString()))) {
+                    chatServer.roster.joined(name);
+                }
+                break;
+            }
+            case USER_LEAVE: {
+                String name = in.readString();
+                if (removeRemote(name)) {
+                    chatServer.roster.left(name);
+                }
+                break;
+            }
+            case USER_RENAME: {
+                String oldName = in.readString();
+                String newName = in.readString();
+                RemoteUser user = roster.get(oldName);
+                if (user != null) {
+                    removeRemote(oldName);
+                    addRemote(newName, user);
+                    chatServer.roster.renamed(oldName, newName);
+                }
+                break;
+            }
+            case USER_ROOM: {
+                String name = in.readString();
+                String room = in.readString();
+                RemoteUser user = roster.get(name);
+                if (user != null) {
+                    adjust(user.room, node, -1);
+                    user.room = room;
+                    adjust(room, node, 1);
+                }
+                break;
+            }
+            case ROOM_MESSAGE: {
+                String roomName = in.readString();
+                String msg = in.readString();
+                String from = in.readString();
+                long time = in.readLong();
+                String body = in.readString();
+                ChatRoom room = chatServer.rooms.get(roomName);
+                if (room != null) {
+                    room.broadcast(null, msg, from, time, body.isEmpty() ? null : body); // 보낸 사람이 이 노드에 없음
+                }
+                break;
+            }
+            case WHISPER: {
+                ClientService to = chatServer.clients.get(in.readString());
+                String from = in.readString();
+                long time = in.readLong();
+                String body = in.readString();
+                if (to != null) {
+                    to.deliverWhisper(from, time, body);
+                }
+                break;
+            }
+            case CLAIM: {
+                long id = in.readLong();
+                String name = in.readString();
+                String owner = owners.putIfAbsent(name, node);
+                boolean granted = (owner == null || owner.equals(node)) && chatServer.clients.get(name) == null;
+                if (owner == null && !granted) {
+                    owners.remove(name, node); // 이 노드의 접속자가 이미 사용 중
+                }
+                if (id != 0) {
+                    bus.send(node, new Protocol.Writer(CLAIM_REPLY, 10).writeLong(id).writeVarint(granted ? 1 : 0).finish());
+                }
+                break;
+            }
+            case CLAIM_REPLY: {
+                CompletableFuture<Boolean> reply = pending.get(in.readLong());
+                if (reply != null) {
+                    reply.complete(in.readVarint() == 1);
+                }
+                break;
+            }
+            case RELEASE:
+                owners.remove(in.readString(), node);
+                break;
+            default:
+                System.out.println("[클러스터] 알 수 없는 프레임: " + in.opcode + " (" + node + ")");
+        }
+    }
+
+    // 콘솔/지표 출력용 요약
+    String report() {
+        long batches = bus.batchesSent();
+        return String.format("노드 %s %s, 원격 접속자 %d, 전송 %d프레임 / %d묶음 (평균 %.1f)", self, nodes,
+                remoteCount(), bus.framesSent(), batches, batches == 0 ? 0.0 : bus.framesSent() / (double) batches);
+    }
+}
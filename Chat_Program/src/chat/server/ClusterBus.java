@@ -0,0 +1,34 @@
+package chat.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// 서버 노드 사이의 메시지 전달 통로 (구현: TcpBus - 노드끼리 TCP 연결, LoopbackBus - 한 JVM 안의 여러 서버)
+// 프레임은 Protocol.Writer로 만든 바이너리 프레임(길이 varint 포함)이고, 받는 쪽에는 opcode부터 넘겨준다.
+// send/publish는 대기열에 넣기만 하고 전송 쓰레드가 여러 프레임을 묶어서 보낸다
+public interface ClusterBus {
+
+    // 노드 연결 상태와 받은 프레임을 처리하는 쪽 (Cluster)
+    interface Listener {
+
+        void onConnected(String node); // 이 노드에서 node로 보낼 수 있게 됨 (내 상태를 알려 줄 때)
+
+        void onReset(String node); // node와의 연결이 끊기거나 새로 시작됨 (node에게서 받은 상태를 버릴 때)
+
+        void onFrame(String node, ByteBuffer frame); // node가 보낸 프레임 (같은 노드의 프레임은 보낸 순서대로 호출)
+    }
+
+    void start(String self, Listener listener) throws IOException;
+
+    boolean isConnected(String node); // node로 지금 보낼 수 있는지
+
+    void send(String node, ByteBuffer frame); // 한 노드에 전송 (연결되지 않았으면 버림)
+
+    void publish(ByteBuffer frame); // 연결된 모든 노드에 전송
+
+    long framesSent(); // 보낸 프레임 수
+
+    long batchesSent(); // 프레임을 묶어 보낸 횟수
+
+    void close();
+}
@@ -0,0 +1,41 @@
+package chat.server;
+
+import chat.common.TextFrames;
+
+import java.util.function.Consumer;
+
+// 여러 줄을 인코딩된 크기가 ChatServer.LOG_CHUNK_BYTES 이내인 문자열로 묶어 차례로 넘긴다 (목록/로그 응답을 프레임 단위로 전송).
+// 글자 수가 아니라 바이트 수로 세므로 한글처럼 3바이트로 인코딩되는 줄이 많아도 프레임이 한도를 넘지 않는다
+class LineChunker {
+
+    Consumer<String> sink; // 묶인 문자열을 받는 곳 (전송 또는 목록에 추가)
+    StringBuilder chunk; // 모으는 중인 줄들
+    int bytes; // chunk의 인코딩된 크기
+
+    LineChunker(String header, Consumer<String> sink) {
+        this.sink = sink;
+        this.chunk = new StringBuilder(header);
+        this.bytes = TextFrames.utfLength(header);
+    }
+
+    // 한 줄 추가 (한도를 넘으면 모은 것을 먼저 넘김)
+    void add(String line) {
+        int length = TextFrames.utfLength(line) + 1;
+        if (chunk.length() > 0 && bytes + length > ChatServer.LOG_CHUNK_BYTES) {
+            sink.accept(chunk.toString());
+            chunk.setLength(0);
+            bytes = 0;
+        }
+        chunk.append(line).append("\n");
+        bytes += length;
+    }
+
+    // 남은 줄을 넘김
+    void finish() {
+        if (chunk.length() > 0) {
+            sink.accept(chunk.toString());
+            chunk.setLength(0);
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package chat.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// 한 JVM 안의 여러 ChatServer를 잇는 버스 (소켓 없이 같은 Hub에 등록된 노드끼리 전달, 시험/벤치마크용)
+// 노드마다 받은 프레임 대기열과 전달 쓰레드를 두고, 쌓인 프레임을 한 번에 꺼내 차례로 처리한다
+public class LoopbackBus implements ClusterBus {
+
+    static final int BATCH_FRAMES = 256; // 한 번에 꺼내 처리하는 최대 프레임 수
+
+    // 같은 클러스터에 속한 노드 목록
+    public static class Hub {
+        Map<String, LoopbackBus> nodes = new ConcurrentHashMap<>();
+    }
+
+    // 받은 프레임과 보낸 노드
+    static class Delivery {
+        final String from;
+        final ByteBuffer frame;
+
+        Delivery(String from, ByteBuffer frame) {
+            this.from = from;
+            this.frame = frame;
+        }
+    }
+
+    Hub hub;
+    String self;
+    Listener listener;
+    BlockingQueue<Delivery> inbox = new LinkedBlockingQueue<>(); // 다른 노드가 보낸 프레임
+    Thread dispatcher; // inbox를 비우며 listener 호출
+    volatile boolean running;
+    LongAdder frames = new LongAdder(); // 전달한 프레임 수 (묶음 단위로 꺼내는 받는 쪽에서 셈)
+    LongAdder batches = new LongAdder();
+
+    public LoopbackBus(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void start(String self, Listener listener) {
+        this.self = self;
+        this.listener = listener;
+        running = true;
+        dispatcher = new Thread(this::dispatch, "cluster-loopback-" + self);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        hub.nodes.put(self, this);
+        for (LoopbackBus other : hub.nodes.values()) {
+            if (other != this) {
+                other.listener.onReset(self); // 새로 시작한 노드
+                other.listener.onConnected(self); // 기존 노드가 새 노드에 자기 상태를 알림
+                listener.onConnected(other.self);
+            }
+        }
+    }
+
+    void dispatch() {
+        List<Delivery> batch = new ArrayList<>(BATCH_FRAMES);
+        try {
+            while (running) {
+                batch.add(inbox.take());
+                inbox.drainTo(batch, BATCH_FRAMES - 1);
+                batches.increment();
+                frames.add(batch.size());
+                for (Delivery delivery : batch) {
+                    ByteBuffer frame = delivery.frame;
+                    while (frame.get() < 0) {
+                        // 길이 varint 건너뜀
+                    }
+                    listener.onFrame(delivery.from, frame.slice());
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // 종료
+        }
+    }
+
+    @Override
+    public boolean isConnected(String node) {
+        return hub.nodes.containsKey(node);
+    }
+
+    @Override
+    public void send(String node, ByteBuffer frame) {
+        LoopbackBus target = hub.nodes.get(node);
+        if (target != null && target != this) {
+            target.inbox.add(new Delivery(self, frame.duplicate()));
+        }
+    }
+
+    @Override
+    public void publish(ByteBuffer frame) {
+        for (String node : hub.nodes.keySet()) {
+            send(node, frame);
+        }
+    }
+
+    @Override
+    public long framesSent() {
+        return frames.sum();
+    }
+
+    @Override
+    public long batchesSent() {
+        return batches.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        hub.nodes.remove(self, this);
+        dispatcher.interrupt();
+        for (LoopbackBus other : hub.nodes.values()) {
+            other.listener.onReset(self);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package chat.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 추가 전용 세그먼트 파일에 메시지를 바이너리로 저장하고, 희소 인덱스로 빠르게 찾아 읽는 저장소
+//
+// 세그먼트 파일(<시작 번호>.seg)의 레코드 형식:
+//   int 길이 | long 시각(ms) | byte 종류 | short 보낸이 길이 | 보낸이(UTF-8) | [short 방 이름 길이 | 방 이름(UTF-8)] | 내용(UTF-8)
+// 방 이름은 종류 바이트에 ROOM_FLAG가 있을 때만 있다 (방 이름을 기록하기 전의 레코드도 그대로 읽음)
+// 인덱스 파일(<시작 번호>.idx)에는 INDEX_INTERVAL개마다 (long 번호, long 시각, long 위치)를 기록한다
+// 세그먼트는 메모리 맵 하나로 읽으므로 MAX_SEGMENT_BYTES(int 범위)를 넘지 않게 나눈다
+public class MessageStore {
+
+    public static final byte TYPE_CHAT = 0; // 일반 채팅
+    public static final byte TYPE_JOIN = 1; // 입장
+    public static final byte TYPE_LEAVE = 2; // 퇴장
+    public static final byte TYPE_NOTICE = 3; // 이미지/귓속말 등 알림
+    public static final byte TYPE_COMMAND = 4; // 명령어 로그
+
+    static final int INDEX_INTERVAL = 64; // 인덱스 간격 (레코드 수)
+    static final int INDEX_ENTRY = 24; // 인덱스 항목 크기
+    static final int RECORD_HEADER = 8 + 1 + 2; // 길이 필드를 제외한 고정 헤더 크기
+    static final int ROOM_FLAG = 0x40; // 종류 바이트에서 방 이름이 있음을 나타내는 비트
+    static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE; // 세그먼트 하나의 최대 크기 (버퍼 위치가 int)
+
+    // 저장된 메시지 하나
+    public static class Record {
+        public final long seq; // 전체 메시지 번호
+        public final long timestamp; // 기록 시각
+        public final byte type; // 종류
+        public final String sender; // 보낸이 (없으면 빈 문자열)
+        public final String room; // 보낸 방 (없으면 빈 문자열)
+        public final String text; // 로그에 표시되는 내용
+
+        public Record(long seq, long timestamp, byte type, String sender, String room, String text) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.type = type;
+            this.sender = sender;
+            this.room = room;
+            this.text = text;
+        }
+    }
+
+    // 세그먼트 파일 하나와 그 인덱스
+    static class Segment {
+        long baseSeq; // 첫 레코드 번호
+        File file; // 세그먼트 파일
+        File indexFile; // 인덱스 파일
+        long size; // 디스크에 기록되어 읽을 수 있는 바이트 수
+        long writePos; // 버퍼에 쌓인 것까지 포함한 논리적 끝 위치
+        int count; // 레코드 수 (버퍼에 쌓인 것 포함)
+        long[] idxSeq = new long[16]; // 인덱스: 레코드 번호
+        long[] idxTime = new long[16]; // 인덱스: 시각
+        long[] idxPos = new long[16]; // 인덱스: 파일 위치
+        int idxSize; // 인덱스 항목 수
+        int idxWritten; // 인덱스 파일에 기록한 항목 수 (레코드가 파일에 기록된 뒤에 기록)
+        FileChannel channel; // 활성 세그먼트의 기록 채널
+        FileChannel indexChannel; // 활성 세그먼트의 인덱스 기록 채널
+        MappedByteBuffer map; // 읽기용 메모리 맵 (활성 세그먼트는 기록된 크기가 늘었을 때만 다시 매핑)
+
+        Segment(File dir, long baseSeq) {
+            this.baseSeq = baseSeq;
+            String name = String.format("%020d", baseSeq);
+            this.file = new File(dir, name + ".seg");
+            this.indexFile = new File(dir, name + ".idx");
+        }
+
+        void addIndex(long seq, long time, long pos) {
+            if (idxSize == idxSeq.length) {
+                idxSeq = Arrays.copyOf(idxSeq, idxSize * 2);
+                idxTime = Arrays.copyOf(idxTime, idxSize * 2);
+                idxPos = Arrays.copyOf(idxPos, idxSize * 2);
+            }
+            idxSeq[idxSize] = seq;
+            idxTime[idxSize] = time;
+            idxPos[idxSize] = pos;
+            idxSize++;
+        }
+
+        // seq 이하인 가장 가까운 인덱스 항목의 위치
+        int floorIndexBySeq(long seq) {
+            int lo = 0;
+            int hi = idxSize - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (idxSeq[mid] <= seq) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        // 시각이 time보다 이전인 마지막 인덱스 항목의 위치 (없으면 -1)
+        int lastIndexBefore(long time) {
+            int lo = 0;
+            int hi = idxSize - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (idxTime[mid] < time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        // 아직 인덱스 파일에 기록하지 않은 항목을 기록
+        void writeIndex() throws IOException {
+            if (idxWritten == idxSize) {
+                return;
+            }
+            ByteBuffer index = ByteBuffer.allocate((idxSize - idxWritten) * INDEX_ENTRY);
+            for (int i = idxWritten; i < idxSize; i++) {
+                index.putLong(idxSeq[i]).putLong(idxTime[i]).putLong(idxPos[i]);
+            }
+            index.flip();
+            while (index.hasRemaining()) {
+                indexChannel.write(index);
+            }
+            idxWritten = idxSize;
+        }
+
+        // 읽기용 버퍼 (매핑을 재사용하고, 매핑 뒤에 기록된 내용이 있을 때만 현재 크기로 다시 매핑)
+        ByteBuffer view() throws IOException {
+            if (map == null || map.capacity() < size) {
+                if (channel != null) {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                } else {
+                    try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        map = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    }
+                }
+            }
+            return map.duplicate();
+        }
+    }
+
+    File dir; // 저장 디렉터리
+    long segmentBytes; // 세그먼트 최대 크기
+    int maxSegments; // 보관할 최대 세그먼트 수
+    TreeMap<Long, Segment> segments = new TreeMap<>(); // 시작 번호별 세그먼트
+    Segment active; // 현재 기록 중인 세그먼트
+    long nextSeq; // 다음에 부여할 번호 (버퍼 포함)
+    long committedSeq; // 디스크에 기록되어 읽을 수 있는 마지막 번호 + 1
+    ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024); // 기록 버퍼
+    ReentrantLock lock = new ReentrantLock();
+
+    public MessageStore(File dir, long segmentBytes, int maxSegments) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.min(segmentBytes, MAX_SEGMENT_BYTES);
+        this.maxSegments = Math.max(1, maxSegments);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("저장 디렉터리를 만들 수 없습니다: " + dir);
+        }
+        recover();
+    }
+
+    // 기존 세그먼트를 불러오고, 마지막 세그먼트는 끝까지 검사하여 잘린 레코드를 제거
+    void recover() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.matches("\\d{20}\\.seg"));
+        long[] bases = new long[files == null ? 0 : files.length];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = Long.parseLong(files[i].getName().substring(0, 20));
+        }
+        Arrays.sort(bases);
+        for (int i = 0; i < bases.length - 1; i++) {
+            Segment segment = new Segment(dir, bases[i]);
+            segment.size = segment.file.length();
+            segment.writePos = segment.size;
+            segment.count = (int) (bases[i + 1] - bases[i]);
+            loadIndex(segment);
+            segment.idxWritten = segment.idxSize;
+            segments.put(segment.baseSeq, segment);
+        }
+        if (bases.length == 0) {
+            openActive(0);
+        } else {
+            Segment last = new Segment(dir, bases[bases.length - 1]);
+            rebuildIndex(last);
+            segments.put(last.baseSeq, last);
+            active = last;
+            active.channel = FileChannel.open(last.file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+            active.channel.truncate(last.size); // 기록 도중 끊긴 레코드 제거
+            active.channel.position(last.size);
+            active.indexChannel = FileChannel.open(last.indexFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            active.writeIndex(); // 남은 레코드 기준으로 다시 만든 인덱스
+            nextSeq = last.baseSeq + last.count;
+        }
+        committedSeq = nextSeq;
+    }
+
+    void loadIndex(Segment segment) throws IOException {
+        if (!segment.indexFile.exists()) {
+            rebuildIndex(segment);
+            return;
+        }
+        try (FileChannel fc = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            while (buf.remaining() >= INDEX_ENTRY) {
+                segment.addIndex(buf.getLong(), buf.getLong(), buf.getLong());
+            }
+        }
+    }
+
+    // 세그먼트 전체를 훑어 레코드 수와 인덱스를 다시 만든다
+    void rebuildIndex(Segment segment) throws IOException {
+        segment.idxSize = 0;
+        try (FileChannel fc = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = fc.size();
+            ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int pos = 0;
+            int count = 0;
+            while (pos + 4 <= fileSize) {
+                int length = buf.getInt(pos);
+                if (length < RECORD_HEADER || pos + 4L + length > fileSize) {
+                    break; // 잘린 레코드
+                }
+                if (count % INDEX_INTERVAL == 0) {
+                    segment.addIndex(segment.baseSeq + count, buf.getLong(pos + 4), pos);
+                }
+                pos += 4 + length;
+                count++;
+            }
+            segment.size = pos;
+            segment.writePos = pos;
+            segment.count = count;
+        }
+    }
+
+    void openActive(long baseSeq) throws IOException {
+        Segment segment = new Segment(dir, baseSeq);
+        segment.channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        segment.indexChannel = FileChannel.open(segment.indexFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(baseSeq, segment);
+        active = segment;
+        nextSeq = baseSeq;
+    }
+
+    // 레코드 추가 (버퍼에 쌓이며 flush()해야 읽을 수 있음). 부여된 번호를 반환
+    public long append(long timestamp, byte type, String sender, String room, String text) throws IOException {
+        byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] roomBytes = room.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER + senderBytes.length + (roomBytes.length > 0 ? 2 + roomBytes.length : 0) + textBytes.length;
+        lock.lock();
+        try {
+            if (active.count > 0 && active.writePos + 4 + length > MAX_SEGMENT_BYTES) {
+                roll(); // 이 레코드까지 넣으면 한 매핑으로 읽을 수 없음
+            }
+            if (writeBuffer.remaining() < 4 + length) {
+                writePending();
+                if (writeBuffer.capacity() < 4 + length) {
+                    writeBuffer = ByteBuffer.allocate(4 + length);
+                }
+            }
+            long seq = nextSeq++;
+            if ((seq - active.baseSeq) % INDEX_INTERVAL == 0) {
+                active.addIndex(seq, timestamp, active.writePos); // 파일에는 레코드를 기록한 뒤 writePending에서 기록
+            }
+            writeBuffer.putInt(length).putLong(timestamp).put((byte) (roomBytes.length > 0 ? type | ROOM_FLAG : type))
+                    .putShort((short) senderBytes.length).put(senderBytes);
+            if (roomBytes.length > 0) {
+                writeBuffer.putShort((short) roomBytes.length).put(roomBytes);
+            }
+            writeBuffer.put(textBytes);
+            active.writePos += 4 + length;
+            active.count++;
+            if (active.writePos >= segmentBytes) {
+                roll();
+            }
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 버퍼의 내용을 파일에 기록하여 읽을 수 있게 함. force가 true면 디스크 동기화
+    public void flush(boolean force) throws IOException {
+        lock.lock();
+        try {
+            writePending();
+            if (force) {
+                active.channel.force(false);
+                active.indexChannel.force(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void writePending() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            active.channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        active.writeIndex(); // 인덱스가 아직 기록되지 않은 레코드를 가리키지 않도록 레코드 다음에 기록
+        active.size = active.writePos;
+        committedSeq = nextSeq;
+    }
+
+    // 활성 세그먼트를 닫고 새 세그먼트를 시작, 보관 개수를 넘는 오래된 세그먼트 삭제
+    void roll() throws IOException {
+        writePending();
+        active.channel.force(false);
+        active.channel.close();
+        active.indexChannel.close();
+        active.channel = null;
+        active.indexChannel = null;
+        openActive(nextSeq);
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            oldest.map = null;
+            if (!oldest.file.delete() || !oldest.indexFile.delete()) {
+                System.out.println("[저장소] 오래된 세그먼트 삭제 실패: " + oldest.file.getName());
+            }
+        }
+    }
+
+    // 보관 중인 가장 오래된 번호
+    public long firstSeq() {
+        lock.lock();
+        try {
+            return segments.firstKey();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 읽을 수 있는 마지막 번호 + 1
+    public long endSeq() {
+        lock.lock();
+        try {
+            return committedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 보관 중인 범위 {가장 오래된 번호, 읽을 수 있는 마지막 번호 + 1} (두 값을 같은 시점에서 읽음)
+    public long[] bounds() {
+        lock.lock();
+        try {
+            return new long[]{segments.firstKey(), committedSeq};
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // fromSeq부터 최대 count개 읽기 (인덱스로 위치를 찾은 뒤 메모리 맵에서 순차 해석)
+    public List<Record> read(long fromSeq, int count) throws IOException {
+        lock.lock();
+        try {
+            List<Record> result = new ArrayList<>();
+            long seq = Math.max(fromSeq, segments.firstKey());
+            while (result.size() < count && seq < committedSeq) {
+                Segment segment = segments.floorEntry(seq).getValue();
+                ByteBuffer buf = segment.view();
+                int idx = segment.floorIndexBySeq(seq);
+                long cur = idx < 0 ? segment.baseSeq : segment.idxSeq[idx];
+                int pos = idx < 0 ? 0 : (int) segment.idxPos[idx];
+                long end = Math.min(committedSeq, segment.baseSeq + segment.count);
+                while (cur < end && result.size() < count) {
+                    int length = buf.getInt(pos);
+                    if (cur >= seq) {
+                        result.add(decode(buf, pos, length, cur));
+                    }
+                    pos += 4 + length;
+                    cur++;
+                }
+                seq = cur;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 시각이 timestamp 이상인 첫 레코드 번호 (없으면 endSeq()). 세그먼트 첫 시각과 희소 인덱스로 위치를 찾은 뒤
+    // 인덱스 간격(INDEX_INTERVAL) 이내만 훑는다 (기록 시각은 번호 순서대로 늘어남)
+    public long seqAt(long timestamp) throws IOException {
+        lock.lock();
+        try {
+            Segment segment = null; // 첫 시각이 timestamp보다 이전인 마지막 세그먼트
+            for (Segment s : segments.values()) {
+                if (s.idxSize == 0) {
+                    continue; // 아직 레코드가 없는 활성 세그먼트
+                }
+                if (s.idxTime[0] >= timestamp) {
+                    break;
+                }
+                segment = s;
+            }
+            if (segment == null) {
+                return Math.min(segments.firstKey(), committedSeq);
+            }
+            ByteBuffer buf = segment.view();
+            int idx = segment.lastIndexBefore(timestamp);
+            long cur = segment.idxSeq[idx];
+            int pos = (int) segment.idxPos[idx];
+            long end = Math.min(committedSeq, segment.baseSeq + segment.count);
+            while (cur < end && buf.getLong(pos + 4) < timestamp) {
+                pos += 4 + buf.getInt(pos);
+                cur++;
+            }
+            return Math.min(cur, committedSeq); // 인덱스 항목이 아직 기록되지 않은 레코드를 가리키면 끝
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 최근 count개 읽기
+    public List<Record> tail(int count) throws IOException {
+        return read(Math.max(0, endSeq() - count), count);
+    }
+
+    static Record decode(ByteBuffer buf, int pos, int length, long seq) {
+        long timestamp = buf.getLong(pos + 4);
+        byte flags = buf.get(pos + 12);
+        int senderLength = buf.getShort(pos + 13) & 0xFFFF;
+        byte[] sender = new byte[senderLength];
+        buf.get(pos + 15, sender);
+        int p = pos + 15 + senderLength;
+        byte[] room = new byte[0];
+        if ((flags & ROOM_FLAG) != 0) {
+            room = new byte[buf.getShort(p) & 0xFFFF];
+            buf.get(p + 2, room);
+            p += 2 + room.length;
+        }
+        byte[] text = new byte[pos + 4 + length - p];
+        buf.get(p, text);
+        return new Record(seq, timestamp, (byte) (flags & ~ROOM_FLAG), new String(sender, StandardCharsets.UTF_8),
+                new String(room, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8));
+    }
+
+    // 남은 버퍼를 기록하고 닫음
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            writePending();
+            active.channel.force(false);
+            active.channel.close();
+            active.indexChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package chat.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Selector 기반 서버: 접속 수락 스레드 1개 + 고정된 수의 I/O 스레드로 모든 클라이언트를 처리
+public class NioServer {
+
+    ChatServer chatServer; // 명령 처리를 위임할 서버
+    ServerSocketChannel serverChannel; // 서버 채널
+    IoWorker[] workers; // I/O 스레드 목록
+    int nextWorker; // 라운드 로빈으로 배정할 다음 워커
+
+    public NioServer(ChatServer chatServer, int portNo, int ioThreads) throws IOException {
+        this.chatServer = chatServer;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(portNo), 1024); // 대량 접속을 위해 backlog 확대
+        workers = new IoWorker[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            workers[i] = new IoWorker(i);
+        }
+    }
+
+    // I/O 스레드와 접속 수락 스레드 시작
+    public void start() {
+        for (IoWorker worker : workers) {
+            worker.start();
+        }
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    SocketChannel channel = serverChannel.accept(); // 블로킹 수락
+                    IoWorker worker = workers[nextWorker++ % workers.length];
+                    worker.register(new NioSession(chatServer, channel, worker));
+                }
+            } catch (ClosedChannelException e) {
+                // 서버 종료
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "nio-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // 새 접속 수락 중지 (기존 연결은 유지)
+    public void stopAccepting() throws IOException {
+        serverChannel.close();
+    }
+
+    // 서버 종료
+    public void close() throws IOException {
+        serverChannel.close();
+        for (IoWorker worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    // Selector 하나를 담당하는 I/O 스레드
+    static class IoWorker extends Thread {
+
+        Selector selector;
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // 다른 스레드에서 요청한 작업
+        // 요청 한도를 넘어 읽기를 멈춘 세션 (재개 시각 순, I/O 스레드만 사용)
+        PriorityQueue<NioSession> paused = new PriorityQueue<>(Comparator.comparingLong(s -> s.client.pauseUntil));
+        volatile boolean running = true;
+
+        IoWorker(int index) throws IOException {
+            super("nio-io-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        // 세션을 이 워커의 Selector에 등록
+        void register(NioSession session) {
+            execute(() -> {
+                try {
+                    session.channel.configureBlocking(false);
+                    session.key = session.channel.register(selector, SelectionKey.OP_READ, session);
+                } catch (IOException e) {
+                    session.close();
+                }
+            });
+        }
+
+        // I/O 스레드에서 작업 실행 (현재 스레드가 I/O 스레드면 즉시 실행)
+        void execute(Runnable task) {
+            if (Thread.currentThread() == this) {
+                task.run();
+                return;
+            }
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        // 다음 select가 끝난 뒤 실행 (취소한 키의 등록 해제를 기다려야 할 때)
+        void executeLater(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        // 세션 읽기 재개 예약 (I/O 스레드에서 호출)
+        void pause(NioSession session) {
+            paused.add(session);
+        }
+
+        // 가장 먼저 재개할 세션까지 남은 시간 (밀리초, 없으면 0: 무한 대기)
+        long selectTimeout() {
+            NioSession first = paused.peek();
+            return first == null ? 0 : Math.max(1, (first.client.pauseNanos() + 999_999) / 1_000_000);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select(selectTimeout());
+                    long now = System.nanoTime();
+                    while (!paused.isEmpty() && paused.peek().client.pauseUntil - now <= 0) {
+                        NioSession session = paused.poll();
+                        try {
+                            session.resumeReading();
+                        } catch (RuntimeException e) {
+                            failed(session, e);
+                        }
+                    }
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            e.printStackTrace(); // 작업 하나의 오류로 I/O 스레드가 끝나지 않도록
+                        }
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioSession session = (NioSession) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                continue;
+                            }
+                            if (key.isReadable()) {
+                                session.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.onWritable();
+                            }
+                        } catch (RuntimeException e) {
+                            failed(session, e);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    ((NioSession) key.attachment()).close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // 세션 처리 중 예상하지 못한 오류: 그 세션만 닫고 같은 Selector의 다른 세션은 계속 처리
+        void failed(NioSession session, RuntimeException e) {
+            System.out.println("[채팅서버] 세션 처리 오류로 연결 종료: " + e);
+            e.printStackTrace();
+            try {
+                session.close();
+            } catch (RuntimeException closeError) {
+                closeError.printStackTrace();
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package chat.server;
+
+import chat.common.Protocol;
+import chat.common.TextFrames;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// NIO 모드에서 클라이언트 하나의 연결 상태를 관리 (writeUTF 프레임을 ByteBuffer에서 점진적으로 해석)
+public class NioSession {
+
+    static final int READ_FRAME = 0; // writeUTF 프레임(2바이트 길이 + 본문) 대기
+    static final int READ_FILE_SIZE = 1; // /img 이후 파일 크기(long) 대기
+    static final int READ_FILE_BODY = 2; // 파일 본문 수신 중
+    static final int READ_BINARY_FRAME = 3; // 바이너리 프레임(varint 길이 + opcode + 필드) 대기
+    static final int INITIAL_BUFFER = 512; // 유휴 연결의 메모리를 작게 유지하기 위한 초기 버퍼 크기
+
+    SocketChannel channel; // 클라이언트 채널
+    NioServer.IoWorker worker; // 이 세션을 담당하는 I/O 스레드
+    SelectionKey key; // Selector 등록 키
+    ClientService client; // 명령 처리 객체
+    ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER); // 수신 버퍼
+    int state = READ_FRAME; // 현재 해석 상태
+    boolean loggedIn; // 닉네임 등록 여부
+    volatile boolean closed; // 종료 여부
+    boolean closeAfterFlush; // 송신 큐를 비운 뒤 종료할지 여부
+    boolean handedOff; // 파일 전송 연결로 넘겨져 더 이상 이 세션이 처리하지 않음
+    boolean readPaused; // 요청 한도를 넘어 소켓 읽기를 멈춘 상태 (TCP 흐름 제어로 보내는 쪽이 멈춤)
+    boolean awaiting; // 클러스터 응답을 기다리는 중 (그동안 프레임을 해석하지 않고, 연결이 끊겨도 종료 처리는 응답 뒤로 미룸)
+    TextFrames.Assembler assembler = new TextFrames.Assembler(); // 64KB를 넘는 텍스트 메시지 조각 합치기
+    ChatServer chatServer; // 서버 참조
+
+    AtomicBoolean flushScheduled = new AtomicBoolean(); // flush 작업 중복 예약 방지
+    ByteBuffer current; // 전송 중인 버퍼 (소켓 버퍼가 가득 차 일부만 기록된 상태일 수 있음)
+    FileChannel sendingFile; // 전송 중인 파일 (transferTo로 커널에서 바로 소켓으로 복사)
+    long sendingPos; // 전송할 다음 파일 위치
+    long sendingRemaining; // 남은 전송 바이트 수
+
+    FileChannel uploadChannel; // 이미지 업로드 저장 파일
+    String uploadName; // 업로드 파일명
+    String uploadCommand; // 업로드 요청 명령어 (로그용)
+    long uploadPos; // 다음에 기록할 파일 위치
+    long uploadRemaining; // 남은 업로드 바이트 수
+
+    NioSession(ChatServer chatServer, SocketChannel channel, NioServer.IoWorker worker) {
+        this.chatServer = chatServer;
+        this.channel = channel;
+        this.worker = worker;
+        this.client = new ClientService(chatServer, this);
+    }
+
+    // 읽기 가능 이벤트 처리
+    void onReadable() {
+        if (awaiting) {
+            return; // 응답을 기다리는 동안은 다음 프레임을 읽지 않음
+        }
+        try {
+            if (state == READ_FILE_BODY && readBuffer.position() == 0) {
+                // 버퍼에 남은 바이트가 없으면 소켓에서 파일로 바로 복사 (힙 버퍼를 거치지 않음)
+                long transferred = uploadChannel.transferFrom(channel, uploadPos, uploadRemaining);
+                if (transferred > 0) {
+                    uploadPos += transferred;
+                    uploadRemaining -= transferred;
+                    if (uploadRemaining == 0) {
+                        finishUpload();
+                    }
+                    return;
+                }
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            int needed = decode();
+            readBuffer.compact();
+            ensureCapacity(needed);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // 버퍼에 쌓인 바이트를 가능한 만큼 해석하고, 다음 단계에 필요한 바이트 수를 반환
+    int decode() throws IOException {
+        while (!closed && !handedOff) {
+            if (state == READ_FRAME) {
+                if (readBuffer.remaining() < 2) {
+                    return 2;
+                }
+                int length = 2 + (readBuffer.getShort(readBuffer.position()) & 0xFFFF);
+                if (readBuffer.remaining() < length) {
+                    return length;
+                }
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                onFrame(new DataInputStream(new ByteArrayInputStream(frame)).readUTF());
+                if (awaiting) {
+                    return 1; // 남은 바이트는 응답을 받은 뒤 해석
+                }
+                if (client.pauseNanos() > 0) {
+                    pauseReading(); // 남은 바이트는 버퍼에 둔 채 재개할 때 해석
+                    return 1;
+                }
+            } else if (state == READ_BINARY_FRAME) {
+                int length = Protocol.frameLength(readBuffer); // 잘못된 길이는 IOException: 이 연결만 끊음
+                if (length == Protocol.INCOMPLETE) {
+                    return Protocol.MAX_HEADER;
+                }
+                if (readBuffer.remaining() < length) {
+                    return length;
+                }
+                int end = readBuffer.position() + length;
+                while (readBuffer.get() < 0) {
+                    // 길이 varint 건너뜀
+                }
+                ByteBuffer frame = readBuffer.slice(); // 복사 없이 수신 버퍼를 그대로 해석
+                frame.limit(end - readBuffer.position());
+                readBuffer.position(end);
+                client.handleFrame(frame);
+                if (awaiting) {
+                    return 1;
+                }
+                if (client.pauseNanos() > 0) {
+                    pauseReading();
+                    return 1;
+                }
+            } else if (state == READ_FILE_SIZE) {
+                if (readBuffer.remaining() < 8) {
+                    return 8;
+                }
+                uploadRemaining = readBuffer.getLong();
+                state = READ_FILE_BODY;
+                if (uploadRemaining <= 0) {
+                    finishUpload();
+                }
+            } else {
+                if (!readBuffer.hasRemaining()) {
+                    return 1;
+                }
+                int count = (int) Math.min(readBuffer.remaining(), uploadRemaining);
+                ByteBuffer chunk = readBuffer.slice();
+                chunk.limit(count);
+                try {
+                    while (chunk.hasRemaining()) {
+                        uploadPos += uploadChannel.write(chunk, uploadPos);
+                    }
+                } catch (IOException e) {
+                    client.imageFailed(uploadCommand, e);
+                    closeAfterFlush();
+                    return 1;
+                }
+                readBuffer.position(readBuffer.position() + count);
+                uploadRemaining -= count;
+                if (uploadRemaining == 0) {
+                    finishUpload();
+                }
+            }
+        }
+        return 1;
+    }
+
+    // 한도 초과: 재개 시각까지 OP_READ를 끔
+    void pauseReading() {
+        readPaused = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        chatServer.metrics.throttledNanos.add(client.pauseNanos());
+        worker.pause(this);
+    }
+
+    // 읽기 재개 (I/O 스레드에서 호출). 멈출 때 버퍼에 남아 있던 프레임부터 처리
+    void resumeReading() {
+        if (closed || !readPaused) {
+            return;
+        }
+        readPaused = false;
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        decodeBuffered();
+    }
+
+    // 수신 버퍼에 남아 있는 프레임 해석 (읽기를 멈췄다가 다시 시작할 때)
+    void decodeBuffered() {
+        try {
+            readBuffer.flip();
+            int needed = decode();
+            readBuffer.compact();
+            ensureCapacity(needed);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // 결과가 나중에 오는 요청(클러스터 닉네임 확인): I/O 스레드를 막지 않도록 결과가 올 때까지 이 연결만 읽기를 멈추고,
+    // 결과가 오면 I/O 스레드에서 then을 실행한 뒤 버퍼에 남은 프레임부터 이어서 처리 (요청 순서 유지)
+    <T> void await(CompletableFuture<T> result, Consumer<T> then) {
+        awaiting = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        result.whenComplete((value, error) -> worker.executeLater(() -> { // 이미 완료됐어도 지금 해석 중인 버퍼를 건드리지 않도록 항상 나중에 실행
+            awaiting = false;
+            then.accept(value);
+            if (closed) {
+                quitClient(); // 기다리는 사이에 연결이 끊김: 미뤄 둔 종료 처리
+                return;
+            }
+            if (client.pauseNanos() > 0) {
+                pauseReading();
+                return;
+            }
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            decodeBuffered();
+        }));
+    }
+
+    // 큰 프레임을 받을 수 있도록 버퍼를 늘리고, 비어 있으면 다시 작게 줄인다
+    void ensureCapacity(int needed) {
+        if (needed > readBuffer.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_BUFFER) {
+            readBuffer = ByteBuffer.allocate(INITIAL_BUFFER);
+        }
+    }
+
+    // 완성된 텍스트 프레임 처리
+    void onFrame(String msg) throws IOException {
+        if (!loggedIn && msg.startsWith(TransferService.HANDSHAKE)) {
+            handOff(msg);
+            return;
+        }
+        if (!loggedIn) {
+            String name = client.negotiate(msg); // 첫 프레임은 닉네임 또는 프로토콜 협상
+            if (client.binary) {
+                state = READ_BINARY_FRAME;
+            }
+            client.login(name, added -> {
+                loggedIn = added;
+                if (!added) {
+                    closeAfterFlush();
+                }
+            });
+            return;
+        }
+        String text = assembler.add(msg);
+        if (text != null) {
+            client.handleMessage(text);
+        }
+    }
+
+    // 파일 전송 연결을 Selector에서 분리해 블로킹 모드로 전송 쓰레드 풀에 넘김
+    void handOff(String handshake) {
+        handedOff = true;
+        ByteBuffer leftover = ByteBuffer.allocate(readBuffer.remaining()); // 이미 읽은 파일 본문 일부
+        leftover.put(readBuffer).flip();
+        key.cancel();
+        worker.executeLater(() -> { // 다음 select에서 등록이 해제된 뒤 블로킹 모드로 전환
+            try {
+                channel.configureBlocking(true);
+                chatServer.startTransfer(channel, handshake, leftover);
+            } catch (IOException e) {
+                close();
+            }
+        });
+    }
+
+    // /img 명령 이후 들어오는 파일 크기와 본문을 파일로 기록하도록 전환
+    void beginUpload(String fileName, String command) {
+        try {
+            uploadChannel = FileChannel.open(chatServer.blobStore.partFile(fileName).toPath(), // 다 받은 뒤에 저장소로 옮김
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            uploadName = fileName;
+            uploadCommand = command;
+            uploadPos = 0;
+            state = READ_FILE_SIZE;
+        } catch (IOException e) {
+            client.imageFailed(command, e);
+            closeAfterFlush(); // 이어지는 파일 바이트를 해석할 수 없으므로 연결 종료
+        }
+    }
+
+    // 업로드 완료 처리
+    void finishUpload() throws IOException {
+        chatServer.metrics.uploadBytes.add(uploadPos);
+        uploadChannel.close();
+        uploadChannel = null;
+        state = READ_FRAME;
+        String stored;
+        try {
+            stored = chatServer.blobStore.put(chatServer.blobStore.partFile(uploadName), uploadName);
+        } catch (IOException e) {
+            client.imageFailed(uploadCommand, e);
+            return;
+        }
+        client.imageReceived(stored, uploadCommand);
+    }
+
+    // I/O 스레드에 flush 예약
+    void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            worker.execute(this::flush);
+        }
+    }
+
+    // 쓰기 가능 이벤트 처리
+    void onWritable() {
+        flush();
+    }
+
+    // 송신 대기열을 소켓이 받아들이는 만큼 기록 (I/O 스레드에서만 호출)
+    void flush() {
+        flushScheduled.set(false);
+        if (closed || key == null) {
+            return;
+        }
+        try {
+            while (true) {
+                if (sendingFile != null) {
+                    long sent = sendingFile.transferTo(sendingPos, sendingRemaining, channel); // 제로 카피 전송
+                    sendingPos += sent;
+                    sendingRemaining -= sent;
+                    if (sendingRemaining > 0) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE); // 소켓 버퍼가 가득 참
+                        return;
+                    }
+                    sendingFile.close();
+                    sendingFile = null;
+                    continue;
+                }
+                if (current == null || !current.hasRemaining()) {
+                    if (!nextBuffer()) {
+                        break;
+                    }
+                    continue;
+                }
+                channel.write(current);
+                if (current.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE); // 소켓 버퍼가 가득 참
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closeAfterFlush) {
+                close();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // 다음에 보낼 항목 준비 (보낼 것이 없으면 false)
+    boolean nextBuffer() throws IOException {
+        Object item = client.outbound.poll();
+        if (item == null) {
+            current = null;
+            return false;
+        }
+        if (item instanceof File) {
+            sendingFile = FileChannel.open(((File) item).toPath(), StandardOpenOption.READ);
+            sendingPos = 0;
+            sendingRemaining = sendingFile.size();
+            chatServer.metrics.downloadBytes.add(sendingRemaining);
+            current = null;
+        } else if (item instanceof OutboundQueue.Body) {
+            current = ((OutboundQueue.Body) item).data; // 캐시된 파일 본문
+            chatServer.metrics.downloadBytes.add(current.remaining());
+        } else {
+            current = (ByteBuffer) item;
+        }
+        return true;
+    }
+
+    // 남은 송신 데이터를 보낸 뒤 종료
+    void closeAfterFlush() {
+        closeAfterFlush = true;
+        scheduleFlush();
+    }
+
+    // 연결 종료
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        client.outbound.clear();
+        try {
+            if (key != null) {
+                key.cancel();
+            }
+            channel.close();
+            if (uploadChannel != null) {
+                uploadChannel.close();
+            }
+            if (sendingFile != null) {
+                sendingFile.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (!awaiting) {
+            quitClient();
+        }
+    }
+
+    // 로그인한 클라이언트의 종료 처리 (접속자 목록에서 제거 및 퇴장 알림)
+    void quitClient() {
+        if (loggedIn) {
+            loggedIn = false;
+            System.out.println(client.chatName + " 연결 종료");
+            client.quit();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package chat.server;
+
+import chat.common.TextFrames;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// 클라이언트별 송신 대기열. 메시지 프레임(ByteBuffer)과 파일 본문(File, Body)을 순서대로 보관한다
+public class OutboundQueue {
+
+    // 메모리에 있는 파일 본문 (메시지 프레임과 달리 정책에 의해 버려지지 않음)
+    public static class Body {
+        final ByteBuffer data;
+
+        public Body(ByteBuffer data) {
+            this.data = data;
+        }
+    }
+
+    // 대기열이 가득 찼을 때(느린 클라이언트) 처리 방식
+    public enum Policy {
+        DROP_OLDEST, // 가장 오래된 메시지를 버림
+        DISCONNECT, // 연결을 끊음
+        COALESCE; // 밀린 메시지를 모두 버리고 생략 안내 메시지 하나로 대체
+
+        // 설정 값을 정책으로 변환. 잘못된 값이면 경고를 출력하고 DROP_OLDEST (서버 시작을 막지 않음)
+        public static Policy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.out.println("[채팅서버] 알 수 없는 송신 대기열 정책: " + value + " (DROP_OLDEST 사용, 가능한 값: "
+                        + Arrays.toString(values()) + ")");
+                return DROP_OLDEST;
+            }
+        }
+    }
+
+    int capacity; // 최대 대기 항목 수 (파일 항목 포함)
+    Policy policy; // 가득 찼을 때의 처리 방식
+    Function<String, ByteBuffer> notice; // 생략 안내 문장을 클라이언트 프로토콜에 맞는 프레임으로 인코딩
+    ArrayDeque<Object> items = new ArrayDeque<>(); // 대기 항목
+    ReentrantLock lock = new ReentrantLock(); // 이 클라이언트의 대기열만 보호 (서버 전체 락과 무관)
+    Condition notEmpty = lock.newCondition();
+    boolean closed; // 더 이상 항목을 받지 않음
+    long dropped; // 정책에 의해 버려진 메시지 수
+    int maxDepth; // 최대 대기 깊이
+
+    public OutboundQueue(int capacity, Policy policy) {
+        this(capacity, policy, OutboundQueue::encode);
+    }
+
+    // notice는 대기열 잠금 안에서 호출되므로 인코딩만 해야 함 (텍스트/바이너리는 호출 시점의 협상 결과로 결정)
+    public OutboundQueue(int capacity, Policy policy, Function<String, ByteBuffer> notice) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.notice = notice;
+    }
+
+    // 메시지 프레임 추가. DISCONNECT 정책에서 가득 차 있으면 false를 반환
+    public boolean offer(ByteBuffer frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (items.size() >= capacity) {
+                if (policy == Policy.DISCONNECT) {
+                    return false;
+                }
+                if (!makeRoom(1)) {
+                    dropped++; // 파일 항목만으로 가득 참: 새 메시지를 버림
+                    return true;
+                }
+            }
+            add(frame);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 버리면 안 되는 항목(파일 안내와 본문)을 한 번에 연달아 추가 (사이에 다른 메시지가 끼어들지 않음).
+    // 파일도 대기열 크기에 포함되므로 자리가 모자라면 정책대로 메시지 프레임을 버려 자리를 만들고,
+    // 그래도 모자라면(DISCONNECT 정책이거나 파일만 쌓여 있음) 하나도 추가하지 않고 false
+    public boolean put(Object... entries) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (!items.isEmpty() && items.size() + entries.length > capacity
+                    && (policy == Policy.DISCONNECT || !makeRoom(entries.length))) {
+                return false;
+            }
+            for (Object entry : entries) {
+                add(entry);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 정책대로 메시지 프레임을 버려 needed개가 들어갈 자리를 만듦. 버릴 프레임이 모자라 자리가 없으면 false
+    private boolean makeRoom(int needed) {
+        int frames = 0;
+        for (Object item : items) {
+            if (item instanceof ByteBuffer) {
+                frames++;
+            }
+        }
+        int kept = items.size() - frames + (policy == Policy.COALESCE && frames > 0 ? 1 : 0); // 버릴 수 없는 항목 (+ 생략 안내)
+        if (kept + needed > capacity) {
+            return false; // 프레임을 다 버려도 모자라면 아무것도 버리지 않음
+        }
+        if (policy == Policy.COALESCE) {
+            coalesce();
+        } else {
+            while (items.size() + needed > capacity && dropOldestFrame()) {
+                // 자리가 날 때까지 오래된 프레임부터 버림
+            }
+        }
+        return items.size() + needed <= capacity;
+    }
+
+    private void add(Object item) {
+        items.addLast(item);
+        maxDepth = Math.max(maxDepth, items.size());
+        notEmpty.signal();
+    }
+
+    // 가장 오래된 메시지 프레임 하나를 제거 (파일 항목은 유지). 버릴 프레임이 없으면 false
+    private boolean dropOldestFrame() {
+        Iterator<Object> it = items.iterator();
+        while (it.hasNext()) {
+            if (it.next() instanceof ByteBuffer) {
+                it.remove();
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 밀린 메시지 프레임을 모두 제거하고 생략 안내 프레임 하나로 대체 (프레임이 없으면 그대로)
+    private void coalesce() {
+        int skipped = 0;
+        Iterator<Object> it = items.iterator();
+        while (it.hasNext()) {
+            if (it.next() instanceof ByteBuffer) {
+                it.remove();
+                skipped++;
+            }
+        }
+        if (skipped == 0) {
+            return;
+        }
+        dropped += skipped;
+        items.addLast(notice.apply("[서버] 수신이 지연되어 메시지 " + skipped + "개가 생략되었습니다."));
+    }
+
+    // 다음 항목을 꺼냄 (없으면 null)
+    public Object poll() {
+        lock.lock();
+        try {
+            return items.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 다음 항목이 올 때까지 대기. 대기열이 닫히고 비어 있으면 null
+    public Object take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (items.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            return items.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 새 항목을 받지 않도록 닫음 (이미 들어온 항목은 계속 꺼낼 수 있음)
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 대기 항목을 모두 버리고 닫음
+    public void clear() {
+        lock.lock();
+        try {
+            items.clear();
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int depth() {
+        lock.lock();
+        try {
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long dropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 문자열을 writeUTF 형식(2바이트 길이 + 수정된 UTF-8) 프레임으로 인코딩
+    public static ByteBuffer encode(String msg) {
+        return TextFrames.encode(msg); // 64KB를 넘으면 이어지는 프레임 여러 개 (대기열에서는 한 항목)
+    }
+}
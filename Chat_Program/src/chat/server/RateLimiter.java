@@ -0,0 +1,28 @@
+package chat.server;
+
+// 토큰 버킷 한도. 초당 rate 만큼 채워지고 burst 까지 쌓인다.
+// 사용량은 잔고가 모자라도 먼저 빼고(빚), 잔고가 다시 0이 될 때까지 기다려야 하는 시간을 돌려주므로
+// 호출한 쪽은 그동안 요청을 더 읽지 않는 것으로 한도를 지킨다
+public class RateLimiter {
+
+    final double ratePerNano; // 나노초당 채워지는 양
+    final double burst; // 최대 잔고
+    double tokens; // 현재 잔고 (음수면 빚)
+    long last; // 마지막으로 채운 시각 (System.nanoTime)
+
+    public RateLimiter(double perSecond, double burst) {
+        this.ratePerNano = perSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.last = System.nanoTime();
+    }
+
+    // amount 만큼 사용하고, 한도를 넘었으면 잔고가 0으로 돌아올 때까지의 나노초를 반환 (넘지 않았으면 0)
+    // 같은 클라이언트의 수신 쓰레드와 전송 쓰레드가 함께 쓸 수 있어 동기화 (경합은 거의 없음)
+    public synchronized long acquire(double amount, long now) {
+        tokens = Math.min(burst, tokens + (now - last) * ratePerNano);
+        last = now;
+        tokens -= amount;
+        return tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+    }
+}
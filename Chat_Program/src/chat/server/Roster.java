@@ -0,0 +1,166 @@
+package chat.server;
+
+import chat.common.Protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// /users 응답 캐시와 접속자 변경 구독. 입장/퇴장/닉네임 변경(다른 노드 포함) 때마다 버전만 올리고,
+// 응답 프레임은 다음 /users 요청 때 한 번만 다시 인코딩하여 같은 버전 동안 모든 요청이 복사 없이 공유한다.
+// /users:watch로 구독한 클라이언트에게는 목록 전체 대신 변경분(입장/퇴장/닉네임 변경)을 버전 순서대로 보낸다
+public class Roster {
+
+    public static final int JOINED = 0; // 변경 종류 (바이너리 USER_EVENT 프레임의 필드)
+    public static final int LEFT = 1;
+    public static final int RENAMED = 2;
+
+    // 특정 버전의 인코딩된 /users 응답 (프로토콜별 프레임 목록, 공유하므로 duplicate()로 전송)
+    static class Snapshot {
+        final long version;
+        final ByteBuffer[] textFrames;
+        final ByteBuffer[] binaryFrames;
+
+        Snapshot(long version, ByteBuffer[] textFrames, ByteBuffer[] binaryFrames) {
+            this.version = version;
+            this.textFrames = textFrames;
+            this.binaryFrames = binaryFrames;
+        }
+    }
+
+    ChatServer chatServer;
+    volatile long version; // 접속자 목록 버전 (변경마다 1씩 증가)
+    volatile Snapshot snapshot; // 마지막으로 인코딩한 응답 (버전이 다르면 다시 만듦)
+    Set<ClientService> watchers = ConcurrentHashMap.newKeySet(); // 변경 구독자
+    ReentrantLock lock = new ReentrantLock(); // 버전 증가와 변경 전송, 스냅샷 재생성을 직렬화 (조회는 잠그지 않음)
+
+    public Roster(ChatServer chatServer) {
+        this.chatServer = chatServer;
+    }
+
+    public void joined(String name) {
+        changed(JOINED, name, "");
+    }
+
+    public void left(String name) {
+        changed(LEFT, name, "");
+    }
+
+    public void renamed(String oldName, String newName) {
+        changed(RENAMED, oldName, newName);
+    }
+
+    // 접속자 목록 변경: 버전을 올리고 구독자에게 변경분 전송 (접속자 맵을 바꾼 뒤 호출)
+    void changed(int kind, String name, String newName) {
+        lock.lock();
+        try {
+            long next = version + 1;
+            version = next;
+            if (watchers.isEmpty()) {
+                return;
+            }
+            ByteBuffer textFrame = null;
+            ByteBuffer binaryFrame = null;
+            for (ClientService client : watchers) {
+                if (client.binary) {
+                    if (binaryFrame == null) {
+                        binaryFrame = new Protocol.Writer(Protocol.USER_EVENT, (name.length() + newName.length()) * 3 + 8)
+                                .writeVarint((int) next).writeVarint(kind).writeString(name).writeString(newName).finish();
+                    }
+                    client.sendFrame(binaryFrame.duplicate());
+                } else {
+                    if (textFrame == null) {
+                        textFrame = OutboundQueue.encode(describe(next, kind, name, newName));
+                    }
+                    client.sendFrame(textFrame.duplicate());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 텍스트 클라이언트에 보내는 변경 안내
+    static String describe(long version, int kind, String name, String newName) {
+        String change = kind == JOINED ? "입장: " + name
+                : kind == LEFT ? "퇴장: " + name : "닉네임 변경: " + name + " -> " + newName;
+        return "[접속자 변경 #" + version + "] " + change;
+    }
+
+    // 현재 버전의 응답 (같은 버전이면 잠그지 않고 캐시를 반환)
+    Snapshot current() {
+        Snapshot s = snapshot;
+        if (s != null && s.version == version) {
+            return s;
+        }
+        lock.lock();
+        try {
+            s = snapshot;
+            long v = version;
+            if (s == null || s.version != v) {
+                s = build(v);
+                snapshot = s;
+            }
+            return s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 접속자 목록을 프레임 크기만큼씩 나누어 두 프로토콜로 인코딩
+    Snapshot build(long v) {
+        List<String> chunks = new ArrayList<>();
+        LineChunker chunker = new LineChunker("", chunks::add);
+        int count = 0;
+        for (ClientService client : chatServer.clients.snapshot()) {
+            chunker.add(client.chatName);
+            count++;
+        }
+        if (chatServer.cluster != null) {
+            for (String name : chatServer.cluster.remoteNames()) {
+                chunker.add(name);
+                count++;
+            }
+        }
+        chunker.finish();
+        String header = "[현재 접속자 목록] (" + count + "명, #" + v + ")\n";
+        if (chunks.isEmpty()) {
+            chunks.add(header);
+        } else {
+            chunks.set(0, header + chunks.get(0));
+        }
+        ByteBuffer[] textFrames = new ByteBuffer[chunks.size()];
+        ByteBuffer[] binaryFrames = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            textFrames[i] = OutboundQueue.encode(chunks.get(i));
+            binaryFrames[i] = ClientService.noticeFrame(chunks.get(i));
+        }
+        return new Snapshot(v, textFrames, binaryFrames);
+    }
+
+    // 현재 목록 전송
+    public void send(ClientService client) {
+        Snapshot s = current();
+        for (ByteBuffer frame : client.binary ? s.binaryFrames : s.textFrames) {
+            client.sendFrame(frame.duplicate());
+        }
+    }
+
+    // 변경 구독: 현재 목록을 먼저 보내고 이후 변경분을 보냄 (잠근 채 등록하므로 사이의 변경을 놓치지 않음)
+    public void watch(ClientService client) {
+        lock.lock();
+        try {
+            send(client);
+            watchers.add(client);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unwatch(ClientService client) {
+        watchers.remove(client);
+    }
+}
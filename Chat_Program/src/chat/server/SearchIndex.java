@@ -0,0 +1,570 @@
+package chat.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 저장소 메시지의 역색인 (/search). 로그 기록 쓰레드가 저장소에 추가할 때마다 함께 갱신한다
+//
+// 글자(문자/숫자)가 이어진 토큰을 2글자씩(bigram) 잘라 색인하므로 띄어쓰기 없는 한국어도 부분 문자열로 찾고,
+// 한 글자 토큰은 그 글자 하나로 색인한다. 색인 키(글자 2개 = int 하나)마다 문서 번호를 오름차순 int 배열로 보관하고,
+// 검색어의 키 목록을 최신 문서부터 거꾸로 교집합하여(건너뛰며 찾는 galloping 탐색) 요청한 수만큼 찾으면 멈춘다.
+// 문서 번호는 저장소 번호에서 첫 번호를 뺀 값이며, 저장소에서 지워진 오래된 문서는 trim()으로 함께 버린다.
+// 일반 채팅(TYPE_CHAT)의 본문만 색인하고(보낸이 이름과 시각은 제외), 문서마다 보낸 방을 기록하여 방별로 거른다
+public class SearchIndex {
+
+    static final int PAGE_SIZE = 20; // 검색 결과 한 페이지의 수
+    static final int CANDIDATE_BATCH = 64; // 한 번에 색인에서 꺼내는 후보 수 (본문 확인 후 모자라면 이어서 꺼냄)
+    static final int MAX_TERMS = 8; // 검색어 최대 개수
+    static final ZoneId ZONE = ZoneId.systemDefault();
+
+    // 문서 번호 목록 (오름차순, 같은 문서는 한 번만)
+    static class Postings {
+        int[] docs = new int[2];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return; // 같은 문서에 같은 키가 여러 번
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+
+        // doc 이상인 첫 위치 (from부터 간격을 두 배씩 늘려 범위를 찾은 뒤 이진 탐색)
+        int seek(int doc, int from) {
+            int step = 1;
+            int hi = from;
+            while (hi < size && docs[hi] < doc) {
+                from = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            hi = Math.min(hi, size);
+            int lo = from;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (docs[mid] < doc) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // doc 이하인 마지막 위치 (from부터 앞쪽으로 간격을 두 배씩 늘려 범위를 찾은 뒤 이진 탐색, 없으면 -1)
+        int seekBack(int doc, int from) {
+            int step = 1;
+            int lo = from;
+            while (lo >= 0 && docs[lo] > doc) {
+                from = lo - 1;
+                lo -= step;
+                step <<= 1;
+            }
+            lo = Math.max(lo, -1);
+            int hi = from;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (docs[mid] <= doc) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        // minDoc보다 작은 문서 제거
+        void trim(int minDoc) {
+            int cut = seek(minDoc, 0);
+            if (cut > 0) {
+                System.arraycopy(docs, cut, docs, 0, size - cut);
+                size -= cut;
+                if (docs.length > 16 && size < docs.length / 4) {
+                    docs = Arrays.copyOf(docs, Math.max(2, size * 2));
+                }
+            }
+        }
+    }
+
+    // 색인 키 -> 문서 번호 목록 (개방 주소법 해시 테이블, 키를 박싱하지 않음. 키 0은 빈 칸)
+    static class GramTable {
+        int[] keys = new int[1024];
+        Postings[] values = new Postings[1024];
+        int size;
+
+        Postings get(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                if (keys[i] == 0) {
+                    return null;
+                }
+            }
+        }
+
+        Postings getOrCreate(int key) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                if (keys[i] == 0) {
+                    keys[i] = key;
+                    size++;
+                    return values[i] = new Postings();
+                }
+            }
+        }
+
+        void resize() {
+            int[] oldKeys = keys;
+            Postings[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new Postings[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // 검색어 하나의 키 목록을 최신 문서부터 거꾸로 훑는 커서 (한 글자 검색어는 그 글자가 들어간 모든 키의 합집합)
+    static class Cursor {
+        Postings[] lists;
+        int[] positions; // 목록별 현재 위치 (뒤에서부터 앞으로만 움직임)
+        long size; // 목록 길이 합 (짧은 커서부터 맞춰 보도록 정렬하는 데 사용)
+
+        Cursor(List<Postings> lists) {
+            this.lists = lists.toArray(new Postings[0]);
+            this.positions = new int[this.lists.length];
+            for (int i = 0; i < this.lists.length; i++) {
+                positions[i] = this.lists[i].size - 1;
+                size += this.lists[i].size;
+            }
+        }
+
+        // doc 이하인 가장 큰 문서 번호 (없으면 -1). doc은 호출할 때마다 같거나 작아야 함
+        int floor(int doc) {
+            int best = -1;
+            for (int i = 0; i < lists.length; i++) {
+                if (positions[i] >= 0) {
+                    positions[i] = lists[i].seekBack(doc, positions[i]);
+                    if (positions[i] >= 0) {
+                        best = Math.max(best, lists[i].docs[positions[i]]);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    // 검색 조건 (형식: 검색어 [검색어...] [from:닉네임] [since:시각] [until:시각] [page:번호])
+    public static class Query {
+        List<String> terms = new ArrayList<>(); // 소문자로 바꾼 검색어 토큰
+        String sender; // 보낸 사람 (없으면 null)
+        long since = Long.MIN_VALUE; // 이 시각 이후 (epoch millis)
+        long until = Long.MAX_VALUE; // 이 시각 이전
+        int page = 1;
+
+        // 시각 형식: yyyy-MM-dd, yyyy-MM-ddTHH:mm[:ss], HH:mm (오늘)
+        static long parseTime(String text, boolean end) {
+            try {
+                if (text.indexOf('T') > 0) {
+                    return LocalDateTime.parse(text).atZone(ZONE).toInstant().toEpochMilli();
+                }
+                if (text.indexOf(':') > 0) {
+                    return LocalDate.now(ZONE).atTime(LocalTime.parse(text)).atZone(ZONE).toInstant().toEpochMilli();
+                }
+                LocalDate date = LocalDate.parse(text);
+                return (end ? date.plusDays(1) : date).atStartOfDay(ZONE).toInstant().toEpochMilli() - (end ? 1 : 0);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("시각 형식 오류: " + text + " (yyyy-MM-dd, yyyy-MM-ddTHH:mm, HH:mm)");
+            }
+        }
+
+        public static Query parse(String text) {
+            Query query = new Query();
+            for (String word : text.trim().split("\\s+")) {
+                if (word.startsWith("from:")) {
+                    query.sender = word.substring("from:".length());
+                } else if (word.startsWith("since:")) {
+                    query.since = parseTime(word.substring("since:".length()), false);
+                } else if (word.startsWith("until:")) {
+                    query.until = parseTime(word.substring("until:".length()), true);
+                } else if (word.startsWith("page:")) {
+                    try {
+                        query.page = Math.max(1, Integer.parseInt(word.substring("page:".length())));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("페이지 번호 오류: " + word);
+                    }
+                } else {
+                    query.terms.addAll(tokens(word));
+                }
+            }
+            if (query.terms.isEmpty()) {
+                throw new IllegalArgumentException("검색어를 입력하세요. 사용법: /search:검색어 [from:닉네임] [since:2024-05-01] [until:18:00] [page:2]");
+            }
+            if (query.terms.size() > MAX_TERMS) {
+                throw new IllegalArgumentException("검색어는 " + MAX_TERMS + "개까지 입력할 수 있습니다.");
+            }
+            return query;
+        }
+
+        // 색인 키만으로 정확히 맞는지 (2글자 이하 검색어는 키 하나가 곧 그 문자열)
+        boolean exact() {
+            for (String term : terms) {
+                if (term.length() > 2) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 본문에 모든 검색어가 들어 있는지 (3글자 이상 검색어의 bigram이 떨어져서 맞은 후보 제거)
+        boolean matches(String text) {
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (String term : terms) {
+                if (!lower.contains(term)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    long origin = -1; // 문서 번호 0에 해당하는 저장소 번호
+    int firstDoc; // 보관 중인 가장 오래된 문서 번호 (times/senders의 0번 칸)
+    int endDoc; // 마지막 문서 번호 + 1
+    long[] times = new long[1024]; // 문서별 시각
+    int[] senders = new int[1024]; // 문서별 보낸 사람 번호 (-1이면 검색 대상 아님)
+    int[] rooms = new int[1024]; // 문서별 보낸 방 번호
+    Map<String, Integer> senderIds = new HashMap<>(); // 보낸 사람 -> 번호
+    Map<String, Integer> roomIds = new HashMap<>(); // 방 이름 -> 번호
+    GramTable grams = new GramTable();
+    ReentrantReadWriteLock lock = new ReentrantReadWriteLock(); // 추가는 기록 쓰레드 하나, 검색은 여러 쓰레드
+
+    // 글자(문자/숫자)가 이어진 토큰 목록 (소문자)
+    static List<String> tokens(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    // 글자 2개를 키 하나로 (한 글자 토큰은 그 글자만)
+    static int gram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    // 채팅 레코드의 본문 ("[보낸이](시각): 본문" 에서 본문만)
+    static String body(String sender, String text) {
+        int end = text.indexOf("): ", sender.length() + 2);
+        return end < 0 ? text : text.substring(end + 3);
+    }
+
+    // 저장소에 추가된 레코드 색인 (기록 쓰레드에서 저장소 번호 순서대로 호출)
+    public void add(long seq, long timestamp, byte type, String sender, String room, String text) {
+        lock.writeLock().lock();
+        try {
+            if (origin < 0) {
+                origin = seq;
+            }
+            long offset = seq - origin;
+            if (offset < endDoc || offset > Integer.MAX_VALUE) {
+                return; // 이미 색인했거나 번호 범위를 넘음
+            }
+            int doc = (int) offset;
+            while (endDoc <= doc) { // 빠진 번호는 검색 대상이 아닌 빈 문서
+                int slot = endDoc - firstDoc;
+                if (slot == times.length) {
+                    times = Arrays.copyOf(times, slot * 2);
+                    senders = Arrays.copyOf(senders, slot * 2);
+                    rooms = Arrays.copyOf(rooms, slot * 2);
+                }
+                times[slot] = timestamp;
+                senders[slot] = -1;
+                rooms[slot] = -1;
+                endDoc++;
+            }
+            if (type != MessageStore.TYPE_CHAT) {
+                return; // 입장/퇴장/알림/명령어 로그는 검색 대상이 아님
+            }
+            senders[doc - firstDoc] = senderIds.computeIfAbsent(sender, s -> senderIds.size());
+            rooms[doc - firstDoc] = roomIds.computeIfAbsent(room, r -> roomIds.size());
+            String lower = body(sender, text).toLowerCase(Locale.ROOT);
+            int start = -1;
+            for (int i = 0; i <= lower.length(); i++) {
+                boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+                if (letter) {
+                    if (start < 0) {
+                        start = i;
+                    } else {
+                        grams.getOrCreate(gram(lower.charAt(i - 1), lower.charAt(i))).add(doc);
+                    }
+                } else if (start >= 0) {
+                    if (i - start == 1) {
+                        grams.getOrCreate(lower.charAt(start)).add(doc); // 한 글자 토큰
+                    }
+                    start = -1;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 저장소에서 지워진 문서(firstSeq 이전) 제거
+    public void trim(long firstSeq) {
+        lock.writeLock().lock();
+        try {
+            if (origin < 0 || firstSeq - origin <= firstDoc) {
+                return;
+            }
+            int minDoc = (int) Math.min(endDoc, firstSeq - origin);
+            int cut = minDoc - firstDoc;
+            System.arraycopy(times, cut, times, 0, endDoc - minDoc);
+            System.arraycopy(senders, cut, senders, 0, endDoc - minDoc);
+            System.arraycopy(rooms, cut, rooms, 0, endDoc - minDoc);
+            firstDoc = minDoc;
+            for (Postings postings : grams.values) {
+                if (postings != null) {
+                    postings.trim(minDoc);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 저장소의 보관 중인 레코드로 색인을 다시 만듦 (서버 시작 시)
+    public void rebuild(MessageStore store) throws IOException {
+        long seq = store.firstSeq();
+        long end = store.endSeq();
+        while (seq < end) {
+            List<MessageStore.Record> batch = store.read(seq, 4096);
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (MessageStore.Record record : batch) {
+                add(record.seq, record.timestamp, record.type, record.sender, record.room, record.text);
+            }
+            seq = batch.get(batch.size() - 1).seq + 1;
+        }
+    }
+
+    // 색인을 그대로 기록 (정상 종료 시 스냅샷에 포함하여 다음 시작 때 저장소를 다시 읽지 않음)
+    public void save(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeLong(origin);
+            out.writeInt(firstDoc);
+            out.writeInt(endDoc);
+            for (int i = 0; i < endDoc - firstDoc; i++) {
+                out.writeLong(times[i]);
+                out.writeInt(senders[i]);
+                out.writeInt(rooms[i]);
+            }
+            writeNames(out, senderIds);
+            writeNames(out, roomIds);
+            out.writeInt(grams.size);
+            for (int i = 0; i < grams.keys.length; i++) {
+                Postings postings = grams.values[i];
+                if (postings != null) {
+                    out.writeInt(grams.keys[i]);
+                    out.writeInt(postings.size);
+                    for (int j = 0; j < postings.size; j++) {
+                        out.writeInt(postings.docs[j]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // save()로 기록한 색인 읽기 (빈 색인에만 호출)
+    public void load(DataInputStream in) throws IOException {
+        lock.writeLock().lock();
+        try {
+            origin = in.readLong();
+            firstDoc = in.readInt();
+            endDoc = in.readInt();
+            int docs = endDoc - firstDoc;
+            times = new long[Math.max(1024, docs)];
+            senders = new int[times.length];
+            rooms = new int[times.length];
+            for (int i = 0; i < docs; i++) {
+                times[i] = in.readLong();
+                senders[i] = in.readInt();
+                rooms[i] = in.readInt();
+            }
+            readNames(in, senderIds);
+            readNames(in, roomIds);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int key = in.readInt();
+                Postings postings = grams.getOrCreate(key);
+                postings.size = in.readInt();
+                postings.docs = new int[Math.max(2, postings.size)];
+                for (int j = 0; j < postings.size; j++) {
+                    postings.docs[j] = in.readInt();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 이름 -> 번호 표 (번호 순서대로 이름만 기록)
+    static void writeNames(DataOutputStream out, Map<String, Integer> ids) throws IOException {
+        String[] names = new String[ids.size()];
+        ids.forEach((name, id) -> names[id] = name);
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    static void readNames(DataInputStream in, Map<String, Integer> ids) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            ids.put(in.readUTF(), i);
+        }
+    }
+
+    // 한 글자 검색어: 그 글자가 들어간 모든 키의 목록 (커서에서 합집합으로 훑음)
+    List<Postings> keysWith(char c) {
+        List<Postings> result = new ArrayList<>();
+        for (int i = 0; i < grams.keys.length; i++) {
+            int key = grams.keys[i];
+            if (key != 0 && (key == c || (key >>> 16) == c || ((key & 0xFFFF) == c && key > 0xFFFF))) {
+                result.add(grams.values[i]);
+            }
+        }
+        return result;
+    }
+
+    // 검색어의 커서 목록 (하나라도 색인에 없으면 null: 결과 없음)
+    List<Cursor> cursorsFor(Query query) {
+        List<Cursor> cursors = new ArrayList<>();
+        for (String term : query.terms) {
+            if (term.length() == 1) {
+                List<Postings> keys = keysWith(term.charAt(0));
+                if (keys.isEmpty()) {
+                    return null;
+                }
+                cursors.add(new Cursor(keys));
+                continue;
+            }
+            for (int i = 1; i < term.length(); i++) {
+                Postings postings = grams.get(gram(term.charAt(i - 1), term.charAt(i)));
+                if (postings == null) {
+                    return null;
+                }
+                cursors.add(new Cursor(List.of(postings)));
+            }
+        }
+        return cursors;
+    }
+
+    // room 방에서 조건에 맞는 후보 저장소 번호를 최신순으로 최대 limit개 (before보다 작은 번호만).
+    // 커서마다 차례로 "현재 문서 이하인 가장 큰 문서"로 물러나며 모든 커서가 같은 문서에 설 때를 찾으므로(leapfrog)
+    // 목록 전체를 만들지 않고 limit개를 찾으면 바로 멈춘다. 3글자 이상 검색어는 본문으로 다시 확인해야 함 (Query.matches)
+    public long[] candidates(Query query, String room, long before, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Cursor> cursors = cursorsFor(query);
+            Integer senderId = query.sender == null ? null : senderIds.get(query.sender);
+            Integer roomId = roomIds.get(room);
+            if (cursors == null || cursors.isEmpty() || (query.sender != null && senderId == null) || roomId == null
+                    || before <= origin + firstDoc) {
+                return new long[0];
+            }
+            cursors.sort((a, b) -> Long.compare(a.size, b.size)); // 짧은 목록부터 맞춰 봄
+            long[] result = new long[Math.min(limit, 16)];
+            int count = 0;
+            int target = (int) Math.min(endDoc - 1, before - 1 - origin);
+            while (count < limit) {
+                int agreed = 0;
+                for (int i = 0; agreed < cursors.size(); i = (i + 1) % cursors.size()) {
+                    int doc = cursors.get(i).floor(target);
+                    if (doc < firstDoc) {
+                        return Arrays.copyOf(result, count); // 더 오래된 문서가 없음
+                    }
+                    if (doc == target) {
+                        agreed++;
+                    } else {
+                        target = doc;
+                        agreed = 1;
+                    }
+                }
+                int slot = target - firstDoc;
+                long time = times[slot];
+                if (time < query.since) {
+                    return Arrays.copyOf(result, count); // 문서는 시각 순서로 추가되므로 이보다 오래된 문서는 모두 since 이전
+                }
+                if (senders[slot] >= 0 && rooms[slot] == roomId && (senderId == null || senders[slot] == senderId)
+                        && time <= query.until) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, count * 2);
+                    }
+                    result[count++] = origin + target;
+                }
+                target--;
+            }
+            return Arrays.copyOf(result, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return endDoc - firstDoc;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
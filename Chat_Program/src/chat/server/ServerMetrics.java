@@ -0,0 +1,256 @@
+package chat.server;
+
+import chat.common.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 서버 지표 모음. 기록하는 쪽은 LongAdder/원자 연산만 사용해 처리 경로에 락을 추가하지 않고,
+// 조회는 JMX(ServerMetricsMBean)와 서버 콘솔의 metrics 명령으로 한다
+public class ServerMetrics implements ServerMetricsMBean {
+
+    static final int TICK_SECONDS = 5; // 전송률 갱신 주기
+    static final String OBJECT_NAME = "chat.server:type=ServerMetrics"; // JMX 등록 이름
+
+    // 전송률 측정기: 전체 수와 최근 1분 지수 이동 평균(초당)
+    static class Meter {
+
+        static final double ALPHA = 1 - Math.exp(-TICK_SECONDS / 60.0); // 1분 평균 가중치
+
+        LongAdder count = new LongAdder();
+        long lastCount; // 직전 갱신 시점의 전체 수
+        volatile double rate; // 초당 수 (1분 평균)
+        boolean initialized;
+
+        void mark() {
+            count.increment();
+        }
+
+        // TICK_SECONDS마다 호출
+        void tick() {
+            long total = count.sum();
+            double instant = (total - lastCount) / (double) TICK_SECONDS;
+            lastCount = total;
+            rate = initialized ? rate + ALPHA * (instant - rate) : instant;
+            initialized = true;
+        }
+    }
+
+    ChatServer chatServer; // 접속자/방/로그 작성기 조회용
+    Meter messagesIn = new Meter(); // 받은 메시지/명령
+    Meter messagesOut = new Meter(); // 송신 대기열에 넣은 프레임
+    LatencyHistogram fanout = new LatencyHistogram(); // 브로드캐스트 fan-out 시간 (나노초)
+    LongAdder uploadBytes = new LongAdder(); // 받은 이미지 바이트
+    LongAdder downloadBytes = new LongAdder(); // 보낸 이미지 바이트
+    AtomicInteger activeTransfers = new AtomicInteger(); // 처리 중인 파일 전송 연결
+    LongAdder throttled = new LongAdder(); // 한도를 넘은 요청 수
+    LongAdder throttledNanos = new LongAdder(); // 한도 초과로 수신을 멈춘 시간 합
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    ScheduledExecutorService ticker; // 전송률 갱신 쓰레드
+
+    public ServerMetrics(ChatServer chatServer) {
+        this.chatServer = chatServer;
+    }
+
+    // 전송률 갱신 시작 및 JMX 등록
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(chatServer::newDaemonThread);
+        ticker.scheduleAtFixedRate(() -> {
+            messagesIn.tick();
+            messagesOut.tick();
+        }, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("[채팅서버] JMX 지표 등록 실패: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdown();
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // 등록되지 않았음
+        }
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return chatServer.clients.size();
+    }
+
+    @Override
+    public int getActiveTransfers() {
+        return activeTransfers.get();
+    }
+
+    @Override
+    public int getRoomCount() {
+        return chatServer.rooms.size();
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.count.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.count.sum();
+    }
+
+    @Override
+    public double getMessagesInPerSecond() {
+        return messagesIn.rate;
+    }
+
+    @Override
+    public double getMessagesOutPerSecond() {
+        return messagesOut.rate;
+    }
+
+    @Override
+    public long getFanoutCount() {
+        return fanout.count();
+    }
+
+    @Override
+    public double getFanoutMeanMicros() {
+        return fanout.mean() / 1000;
+    }
+
+    @Override
+    public long getFanoutP50Micros() {
+        return fanout.percentile(50) / 1000;
+    }
+
+    @Override
+    public long getFanoutP99Micros() {
+        return fanout.percentile(99) / 1000;
+    }
+
+    @Override
+    public long getFanoutP999Micros() {
+        return fanout.percentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getFanoutMaxMicros() {
+        return fanout.max() / 1000;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (ClientService client : chatServer.clients.snapshot()) {
+            max = Math.max(max, client.outbound.depth());
+        }
+        return max;
+    }
+
+    @Override
+    public long getTotalQueueDepth() {
+        long total = 0;
+        for (ClientService client : chatServer.clients.snapshot()) {
+            total += client.outbound.depth();
+        }
+        return total;
+    }
+
+    @Override
+    public String[] getQueueDepths() {
+        ClientService[] snapshot = chatServer.clients.snapshot();
+        String[] depths = new String[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            depths[i] = snapshot[i].chatName + "=" + snapshot[i].outbound.depth();
+        }
+        return depths;
+    }
+
+    @Override
+    public long getUploadBytes() {
+        return uploadBytes.sum();
+    }
+
+    @Override
+    public long getDownloadBytes() {
+        return downloadBytes.sum();
+    }
+
+    @Override
+    public long getThrottledRequests() {
+        return throttled.sum();
+    }
+
+    @Override
+    public long getThrottledMillis() {
+        return throttledNanos.sum() / 1_000_000;
+    }
+
+    @Override
+    public int getLogWriterPending() {
+        return chatServer.logWriter == null ? 0 : chatServer.logWriter.pending();
+    }
+
+    @Override
+    public long getLogWriterLagMillis() {
+        return chatServer.logWriter == null ? 0 : chatServer.logWriter.lagMillis;
+    }
+
+    @Override
+    public int getClusterRemoteUsers() {
+        return chatServer.cluster == null ? 0 : chatServer.cluster.remoteCount();
+    }
+
+    @Override
+    public long getClusterFramesSent() {
+        return chatServer.cluster == null ? 0 : chatServer.cluster.bus.framesSent();
+    }
+
+    @Override
+    public long getClusterBatchesSent() {
+        return chatServer.cluster == null ? 0 : chatServer.cluster.bus.batchesSent();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threads.getThreadCount();
+    }
+
+    @Override
+    public int getPeakThreadCount() {
+        return threads.getPeakThreadCount();
+    }
+
+    @Override
+    public String report() {
+        return String.format("연결: %d, 전송 연결: %d, 방: %d%n"
+                        + "수신: %d (%.1f/s), 송신: %d (%.1f/s)%n"
+                        + "fan-out: %d회, 평균 %.0fus, p50 %dus, p99 %dus, p99.9 %dus, 최대 %dus%n"
+                        + "송신 대기열: 합계 %d, 최대 %d%n"
+                        + "이미지: 업로드 %d bytes, 다운로드 %d bytes%n"
+                        + "요청 한도 초과: %d건, 수신 중지 %dms%n"
+                        + "로그 기록 대기: %d개, 지연 %dms%n"
+                        + "쓰레드: %d (최대 %d)",
+                getActiveConnections(), getActiveTransfers(), getRoomCount(),
+                getMessagesIn(), getMessagesInPerSecond(), getMessagesOut(), getMessagesOutPerSecond(),
+                getFanoutCount(), getFanoutMeanMicros(), getFanoutP50Micros(), getFanoutP99Micros(),
+                getFanoutP999Micros(), getFanoutMaxMicros(),
+                getTotalQueueDepth(), getMaxQueueDepth(),
+                getUploadBytes(), getDownloadBytes(),
+                getThrottledRequests(), getThrottledMillis(),
+                getLogWriterPending(), getLogWriterLagMillis(),
+                getThreadCount(), getPeakThreadCount())
+                + (chatServer.cluster != null ? System.lineSeparator() + "클러스터: " + chatServer.cluster.report() : "");
+    }
+}
@@ -0,0 +1,61 @@
+package chat.server;
+
+// JMX로 공개하는 서버 지표 (jconsole 등에서 chat.server:type=ServerMetrics 로 조회)
+public interface ServerMetricsMBean {
+
+    int getActiveConnections(); // 접속 중인 채팅 연결 수
+
+    int getActiveTransfers(); // 처리 중인 파일 전송 연결 수
+
+    int getRoomCount(); // 방 수
+
+    long getMessagesIn(); // 받은 메시지/명령 수
+
+    long getMessagesOut(); // 송신 대기열에 넣은 프레임 수
+
+    double getMessagesInPerSecond(); // 최근 1분 평균 초당 수신 수
+
+    double getMessagesOutPerSecond(); // 최근 1분 평균 초당 송신 수
+
+    long getFanoutCount(); // 브로드캐스트 횟수
+
+    double getFanoutMeanMicros(); // 브로드캐스트 fan-out 평균 시간
+
+    long getFanoutP50Micros();
+
+    long getFanoutP99Micros();
+
+    long getFanoutP999Micros();
+
+    long getFanoutMaxMicros();
+
+    int getMaxQueueDepth(); // 가장 많이 밀린 클라이언트의 송신 대기열 깊이
+
+    long getTotalQueueDepth(); // 전체 클라이언트 송신 대기열 깊이 합
+
+    String[] getQueueDepths(); // 클라이언트별 송신 대기열 깊이 (닉네임=깊이)
+
+    long getUploadBytes(); // 받은 이미지 바이트 수
+
+    long getDownloadBytes(); // 보낸 이미지 바이트 수
+
+    long getThrottledRequests(); // 클라이언트별 요청 한도를 넘은 요청 수
+
+    long getThrottledMillis(); // 한도 초과로 클라이언트 소켓 읽기를 멈춘 시간 합
+
+    int getLogWriterPending(); // 아직 파일에 기록되지 않은 로그 수
+
+    long getLogWriterLagMillis(); // 마지막으로 기록한 로그가 추가된 뒤 기록되기까지 걸린 시간
+
+    int getClusterRemoteUsers(); // 다른 노드의 접속자 수 (단일 서버면 0)
+
+    long getClusterFramesSent(); // 다른 노드로 보낸 프레임 수
+
+    long getClusterBatchesSent(); // 다른 노드로 프레임을 묶어 보낸 횟수
+
+    int getThreadCount(); // JVM 쓰레드 수
+
+    int getPeakThreadCount(); // JVM 최대 쓰레드 수
+
+    String report(); // 콘솔 출력용 요약
+}
@@ -0,0 +1,82 @@
+package chat.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// 정상 종료 시 메모리 상태(최근 로그, 로비 대화, 검색 색인)를 저장소 디렉터리의 파일 하나에 바이너리로 기록하고,
+// 다음 시작 때 저장소를 처음부터 읽어 색인을 다시 만드는 대신 그대로 읽어 들인다 (warm start).
+// 스냅샷은 기록할 때의 저장소 끝 번호를 담고 있어 그 뒤로 저장소가 바뀌었으면 쓰지 않으며,
+// 읽은 뒤에는 지워서 비정상 종료 후 오래된 스냅샷을 다시 읽지 않게 한다
+public class ServerSnapshot {
+
+    static final int MAGIC = 0x43534E50; // "CSNP"
+    static final int VERSION = 2; // 2: 검색 색인에 문서별 방 추가
+    static final String FILE_NAME = "snapshot.bin";
+
+    // 스냅샷 기록 (임시 파일에 쓴 뒤 교체하므로 기록 중에 종료되어도 이전 파일이 깨지지 않음)
+    public static void save(File dir, long storeEnd, ChatHistory logs, ChatHistory lobby, SearchIndex index)
+            throws IOException {
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 256 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(storeEnd);
+            writeLines(out, logs.range(0, logs.capacity()));
+            writeLines(out, lobby != null ? lobby.range(0, lobby.capacity()) : List.of());
+            index.save(out);
+        }
+        Files.move(tmp.toPath(), new File(dir, FILE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 스냅샷 복원. 없거나 저장소 끝 번호가 다르거나 읽을 수 없으면 false (호출자가 저장소에서 다시 만듦)
+    public static boolean load(File dir, long storeEnd, ChatHistory logs, ChatHistory lobby, SearchIndex index) {
+        File file = new File(dir, FILE_NAME);
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != storeEnd) {
+                return false;
+            }
+            readLines(in, logs);
+            readLines(in, lobby);
+            index.load(in);
+            return true;
+        } catch (IOException e) {
+            System.out.println("[채팅서버] 스냅샷을 읽지 못해 저장소에서 복원합니다: " + e.getMessage());
+            return false;
+        } finally {
+            file.delete(); // 한 번만 사용
+        }
+    }
+
+    // 줄 목록 (writeUTF의 64KB 한도를 넘는 긴 메시지가 있으므로 길이를 int로 기록)
+    static void writeLines(DataOutputStream out, List<String> lines) throws IOException {
+        out.writeInt(lines.size());
+        for (String line : lines) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static void readLines(DataInputStream in, ChatHistory history) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            history.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+}
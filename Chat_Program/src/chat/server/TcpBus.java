@@ -0,0 +1,266 @@
+package chat.server;
+
+import chat.common.Protocol;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// 노드끼리 TCP로 잇는 버스 (한 컴퓨터에서는 루프백 주소와 서로 다른 포트로 여러 노드를 띄워 시험)
+//
+// 노드마다 다른 모든 노드로 나가는 연결을 하나씩 열고 그 연결로만 보낸다 (받는 것은 상대가 연 연결로).
+// 나가는 연결마다 전송 쓰레드가 대기열에 쌓인 프레임을 최대 BATCH_FRAMES개/BATCH_BYTES까지 모아
+// gathering write 한 번으로 보내므로, 메시지가 몰릴수록 프레임당 시스템 호출 수가 줄어든다.
+// 연결하면 받는 쪽이 CHALLENGE(임의 값)를 보내고, 여는 쪽은 HELLO(노드 이름, 공유 비밀키로 만든 HMAC)로 답한다.
+// 받는 쪽은 HMAC이 맞는 노드의 연결만 받아들인다. 보낼 것이 없으면 HEARTBEAT_MILLIS마다 PING으로 끊긴 연결을 찾는다.
+// 연결 뒤의 프레임은 암호화하지 않으므로 노드 사이 네트워크는 신뢰할 수 있는 내부망이어야 한다
+public class TcpBus implements ClusterBus {
+
+    static final byte CHALLENGE = 0x7D; // 임의 값 2개 (long)
+    static final byte HELLO = 0x7E; // 노드 이름, HMAC-SHA256(비밀키, 임의 값 + 노드 이름) Base64
+    static final byte PING = 0x7F; // 빈 프레임
+    static final int BATCH_FRAMES = 256; // 한 번에 묶어 보내는 최대 프레임 수
+    static final int BATCH_BYTES = 256 * 1024; // 한 번에 묶어 보내는 최대 바이트 수
+    static final long HEARTBEAT_MILLIS = 1000; // 보낼 것이 없을 때 PING 간격
+    static final long RECONNECT_MILLIS = 1000; // 연결 실패 후 다시 시도하기까지의 시간
+
+    static final SecureRandom RANDOM = new SecureRandom();
+
+    Map<String, InetSocketAddress> addresses; // 노드 이름 -> 주소 (자기 자신 포함)
+    int queueCapacity; // 노드별 송신 대기열 크기 (가득 차면 버림)
+    SecretKeySpec secret; // 노드끼리 공유하는 비밀키 (연결 인증)
+    String self;
+    Listener listener;
+    ServerSocketChannel serverChannel; // 다른 노드가 여는 연결 수락
+    Map<String, Peer> peers = new ConcurrentHashMap<>(); // 나가는 연결
+    volatile boolean running;
+    LongAdder frames = new LongAdder();
+    LongAdder batches = new LongAdder();
+    LongAdder dropped = new LongAdder(); // 대기열이 가득 차거나 연결이 없어 버린 프레임
+
+    public TcpBus(Map<String, InetSocketAddress> addresses, int queueCapacity, String secret) {
+        this.addresses = addresses;
+        this.queueCapacity = queueCapacity;
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    // 연결 인증 값: HMAC-SHA256(비밀키, 받는 쪽이 보낸 임의 값 + 여는 쪽 노드 이름)
+    byte[] sign(long nonce1, long nonce2, String node) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secret);
+            mac.update(ByteBuffer.allocate(16).putLong(nonce1).putLong(nonce2).flip());
+            return mac.doFinal(node.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e); // HmacSHA256은 모든 JDK에 있음
+        }
+    }
+
+    // 다른 노드로 나가는 연결 하나와 그 송신 대기열
+    class Peer extends Thread {
+
+        String node;
+        InetSocketAddress address;
+        BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>(queueCapacity);
+        volatile boolean connected;
+
+        Peer(String node, InetSocketAddress address) {
+            super("cluster-send-" + node);
+            setDaemon(true);
+            this.node = node;
+            this.address = address;
+        }
+
+        @Override
+        public void run() {
+            ByteBuffer[] batch = new ByteBuffer[BATCH_FRAMES];
+            while (running) {
+                try (SocketChannel channel = SocketChannel.open(address)) {
+                    channel.socket().setTcpNoDelay(true); // 묶음 단위로 쓰므로 Nagle 지연 불필요
+                    Protocol.Reader challenge = new Protocol.Reader(Protocol.readFrame(new DataInputStream(Channels.newInputStream(channel))));
+                    if (challenge.opcode != CHALLENGE) {
+                        throw new IOException("인증 요청 없음");
+                    }
+                    byte[] mac = sign(challenge.readLong(), challenge.readLong(), self);
+                    write(channel, new ByteBuffer[]{new Protocol.Writer(HELLO, 80)
+                            .writeString(self).writeString(Base64.getEncoder().encodeToString(mac)).finish()}, 1);
+                    connected = true;
+                    listener.onConnected(node); // 내 접속자 목록 등을 상대에게 보냄 (대기열에 추가)
+                    while (running) {
+                        ByteBuffer first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                        int count = 0;
+                        long bytes = 0;
+                        batch[count++] = first != null ? first : new Protocol.Writer(PING, 0).finish();
+                        bytes += batch[0].remaining();
+                        ByteBuffer next;
+                        while (count < BATCH_FRAMES && bytes < BATCH_BYTES && (next = queue.poll()) != null) {
+                            batch[count++] = next;
+                            bytes += next.remaining();
+                        }
+                        write(channel, batch, count);
+                        frames.add(first != null ? count : count - 1);
+                        batches.increment();
+                    }
+                } catch (IOException e) {
+                    // 상대 노드가 아직 없거나 연결이 끊김: 잠시 후 다시 연결
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    if (connected) {
+                        connected = false;
+                        dropped.add(queue.size());
+                        queue.clear(); // 다시 연결되면 onConnected에서 상태를 새로 보냄
+                    }
+                }
+                try {
+                    Thread.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void write(SocketChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+            long remaining = 0;
+            for (int i = 0; i < count; i++) {
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, 0, count);
+            }
+        }
+    }
+
+    @Override
+    public void start(String self, Listener listener) throws IOException {
+        this.self = self;
+        this.listener = listener;
+        running = true;
+        serverChannel = ServerSocketChannel.open().bind(addresses.get(self)); // 설정한 주소에만 (모든 인터페이스가 아님)
+        Thread acceptor = new Thread(this::accept, "cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (Map.Entry<String, InetSocketAddress> entry : addresses.entrySet()) {
+            if (!entry.getKey().equals(self)) {
+                Peer peer = new Peer(entry.getKey(), entry.getValue());
+                peers.put(peer.node, peer);
+                peer.start();
+            }
+        }
+    }
+
+    // 다른 노드가 여는 연결 수락 (연결마다 수신 쓰레드)
+    void accept() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                Thread reader = new Thread(() -> receive(channel), "cluster-receive");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return; // 버스 종료
+            }
+        }
+    }
+
+    // 들어오는 연결을 인증한 뒤 프레임을 읽어 listener에 전달
+    void receive(SocketChannel channel) {
+        String node = null;
+        try (SocketChannel c = channel) {
+            long nonce1 = RANDOM.nextLong();
+            long nonce2 = RANDOM.nextLong();
+            ByteBuffer challenge = new Protocol.Writer(CHALLENGE, 16).writeLong(nonce1).writeLong(nonce2).finish();
+            while (challenge.hasRemaining()) {
+                c.write(challenge);
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(c), 64 * 1024));
+            Protocol.Reader hello = new Protocol.Reader(Protocol.readFrame(in));
+            String name = hello.opcode == HELLO ? hello.readString() : null;
+            if (name == null || !peers.containsKey(name)
+                    || !MessageDigest.isEqual(sign(nonce1, nonce2, name), Base64.getDecoder().decode(hello.readString()))) {
+                System.out.println("[클러스터] 인증되지 않은 연결: " + c.getRemoteAddress());
+                return;
+            }
+            node = name;
+            System.out.println("[클러스터] 노드 연결: " + node);
+            listener.onReset(node); // 다시 시작한 노드면 이전 상태를 버리고 새로 받음
+            while (running) {
+                ByteBuffer frame = Protocol.readFrame(in);
+                if (frame.get(frame.position()) != PING) {
+                    listener.onFrame(node, frame);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 연결 끊김
+        } finally {
+            if (node != null) {
+                System.out.println("[클러스터] 노드 연결 끊김: " + node);
+                listener.onReset(node);
+            }
+        }
+    }
+
+    @Override
+    public boolean isConnected(String node) {
+        Peer peer = peers.get(node);
+        return peer != null && peer.connected;
+    }
+
+    @Override
+    public void send(String node, ByteBuffer frame) {
+        Peer peer = peers.get(node);
+        if (peer == null || !peer.connected || !peer.queue.offer(frame.duplicate())) {
+            dropped.increment();
+        }
+    }
+
+    @Override
+    public void publish(ByteBuffer frame) {
+        for (String node : peers.keySet()) {
+            send(node, frame);
+        }
+    }
+
+    @Override
+    public long framesSent() {
+        return frames.sum();
+    }
+
+    @Override
+    public long batchesSent() {
+        return batches.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Peer peer : peers.values()) {
+            peer.interrupt();
+        }
+    }
+}
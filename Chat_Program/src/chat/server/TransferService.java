@@ -0,0 +1,263 @@
+package chat.server;
+
+import chat.common.ChunkMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// 채팅 연결과 분리된 파일 전송 전용 연결 처리 (전송 전용 쓰레드 풀에서 실행)
+//
+// 파일은 청크 단위로 CRC32C를 확인하며 주고받고, 큰 파일은 여러 연결로 나누어 병렬 전송할 수 있다.
+// 연결 후 첫 프레임으로 아래 중 하나를 보낸다 (토큰은 로그인 시 /session:토큰 으로 전달됨, 청크 목록 형식은 ChunkMap 참고)
+//   /data:토큰:upload:청크목록:파일명     -> 서버는 /need:받을청크번호 로 응답 (이미 받아 둔 청크는 제외되어 이어 받기 가능)
+//                                          이후 /commit 을 보내면 /ok 또는 /need:빠진청크번호 로 응답
+//   /data:토큰:put:청크번호:파일명        -> 이어서 해당 청크 본문을 순서대로 전송, 서버는 /ok 또는 /need:CRC가틀린청크번호 로 응답
+//   /data:토큰:download:파일명           -> 서버는 /file:파일명:청크목록 으로 응답
+//   /data:토큰:get:청크번호:파일명        -> 서버는 해당 청크 본문을 순서대로 전송
+public class TransferService implements Runnable {
+
+    public static final String HANDSHAKE = "/data:"; // 전송 연결 식별 접두어
+
+    ChatServer chatServer; // 서버 참조
+    SocketChannel channel; // 전송 연결 (블로킹 모드)
+    String handshake; // 첫 프레임
+    ByteBuffer leftover; // 첫 프레임 뒤에 이미 읽혀 있던 바이트 (NIO 모드에서 넘어온 경우)
+    ReadableByteChannel input; // leftover를 먼저 돌려주는 입력 채널
+    DataInputStream dis; // 입력 스트림
+    DataOutputStream dos; // 출력 스트림
+
+    public TransferService(ChatServer chatServer, SocketChannel channel, String handshake, ByteBuffer leftover) {
+        this.chatServer = chatServer;
+        this.channel = channel;
+        this.handshake = handshake;
+        this.leftover = leftover;
+    }
+
+    @Override
+    public void run() {
+        chatServer.metrics.activeTransfers.incrementAndGet();
+        try {
+            input = new ReadableByteChannel() {
+                public int read(ByteBuffer dst) throws IOException {
+                    if (leftover == null || !leftover.hasRemaining()) {
+                        return channel.read(dst);
+                    }
+                    int count = Math.min(dst.remaining(), leftover.remaining());
+                    ByteBuffer slice = leftover.slice();
+                    slice.limit(count);
+                    dst.put(slice);
+                    leftover.position(leftover.position() + count);
+                    return count;
+                }
+
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+            dis = new DataInputStream(Channels.newInputStream(input));
+            dos = new DataOutputStream(Channels.newOutputStream(channel));
+            String[] parts = handshake.split(":", 4); // "/data", 토큰, 명령, 인자
+            ClientService owner = parts.length == 4 ? chatServer.transferTokens.get(parts[1]) : null;
+            if (owner == null) {
+                dos.writeUTF("[서버] 인증되지 않은 전송 연결입니다.");
+                return;
+            }
+            try {
+                switch (parts[2]) {
+                    case "upload":
+                        handleUpload(owner, parts[3]);
+                        break;
+                    case "put":
+                        handlePut(owner, parts[3]);
+                        break;
+                    case "download":
+                        handleDownload(owner, parts[3]);
+                        break;
+                    case "get":
+                        handleGet(parts[3]);
+                        break;
+                    default:
+                        dos.writeUTF("[서버] 알 수 없는 전송 명령입니다: " + parts[2]);
+                }
+            } catch (IllegalArgumentException e) {
+                dos.writeUTF("[서버] 전송 요청 형식 오류: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            System.out.println("[전송] 연결 오류: " + e.getMessage());
+        } finally {
+            chatServer.metrics.activeTransfers.decrementAndGet();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 클라이언트의 업로드 한도를 넘었으면 그만큼 기다린 뒤 진행 (전송 연결을 읽지 않아 보내는 쪽이 멈춤)
+    void throttle(RateLimiter limit) throws IOException {
+        long wait = ClientService.acquire(limit, 1, System.nanoTime());
+        if (wait <= 0) {
+            return;
+        }
+        chatServer.metrics.throttled.increment();
+        chatServer.metrics.throttledNanos.add(wait);
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("업로드 대기 중 중단");
+        }
+    }
+
+    // 업로드 시작과 완료 확인. 인자 형식: 파일크기:청크크기:crc,...:파일명
+    void handleUpload(ClientService owner, String args) throws IOException {
+        int nameStart = nthColon(args, 3);
+        ChunkMap map = ChunkMap.parse(args.substring(0, nameStart));
+        String fileName = new File(args.substring(nameStart + 1).trim()).getName(); // 경로 제거
+        String command = "/img:" + fileName;
+        String key = uploadKey(owner, fileName);
+        throttle(owner.imageLimit);
+
+        ChunkedUpload upload = chatServer.uploads.get(key);
+        if (upload == null) {
+            upload = new ChunkedUpload(chatServer.blobStore, owner, fileName, map); // 남아 있는 .part 파일에서 맞는 청크 확인
+            ChunkedUpload existing = chatServer.uploads.putIfAbsent(key, upload);
+            if (existing != null) {
+                upload.close();
+                upload = existing;
+            }
+        }
+        if (upload.owner != owner || !upload.map.equals(map)) { // 재접속 전 연결의 업로드가 아직 끝나지 않은 경우 포함
+            dos.writeUTF("[서버] 같은 이름의 다른 파일이 업로드 중입니다: " + fileName);
+            return;
+        }
+        try {
+            dos.writeUTF("/need:" + ChunkMap.formatIndices(upload.missing()));
+            while (true) {
+                String request = dis.readUTF();
+                if (!request.equals("/commit")) {
+                    dos.writeUTF("[서버] 알 수 없는 전송 명령입니다: " + request);
+                    continue;
+                }
+                String stored = upload.complete();
+                if (stored != null) {
+                    chatServer.uploads.remove(key, upload);
+                    chatServer.chunkMaps.putIfAbsent(chatServer.blobStore.file(stored).getPath(), map);
+                    dos.writeUTF("/ok");
+                    owner.imageReceived(stored, command);
+                    return;
+                }
+                dos.writeUTF("/need:" + ChunkMap.formatIndices(upload.missing()));
+            }
+        } catch (EOFException e) {
+            owner.imageFailed(command, new IOException("업로드가 중단되었습니다 (이어서 받을 수 있음)"));
+        } catch (IOException e) {
+            owner.imageFailed(command, e);
+        } finally {
+            if (chatServer.uploads.remove(key, upload)) {
+                upload.close(); // .part 파일은 남겨 두어 다음 업로드에서 이어 받음
+            }
+        }
+    }
+
+    // 업로드 청크 수신. 인자 형식: 청크번호:파일명
+    void handlePut(ClientService owner, String args) throws IOException {
+        int colon = args.indexOf(':');
+        String fileName = new File(args.substring(colon + 1).trim()).getName();
+        ChunkedUpload upload = chatServer.uploads.get(uploadKey(owner, fileName));
+        if (colon < 0 || upload == null || upload.owner != owner) {
+            dos.writeUTF("[서버] 진행 중인 업로드가 없습니다: " + fileName);
+            return;
+        }
+        List<Integer> bad = new ArrayList<>();
+        ByteBuffer buffer = chatServer.transferBuffers.get(); // 전송 쓰레드마다 하나 (청크 크기와 무관한 고정 크기)
+        for (int index : ChunkMap.parseIndices(args.substring(0, colon), upload.map.count())) {
+            if (!upload.receive(index, input, buffer)) {
+                bad.add(index); // CRC 불일치: 클라이언트가 다시 보냄
+            }
+            chatServer.metrics.uploadBytes.add(upload.map.length(index));
+        }
+        dos.writeUTF(bad.isEmpty() ? "/ok" : "/need:" + ChunkMap.formatIndices(bad));
+    }
+
+    // 다운로드할 파일의 청크 목록 전송. 인자: 파일명
+    void handleDownload(ClientService owner, String args) throws IOException {
+        String fileName = new File(args.trim()).getName(); // 경로 제거
+        File file = chatServer.blobStore.file(fileName); // 서버에 저장된 파일
+        if (file == null) {
+            dos.writeUTF("[서버] 파일이 존재하지 않습니다: " + fileName);
+            chatServer.logCommand(owner.chatName, "/download:" + fileName, "다운로드 실패 - 파일 없음");
+            return;
+        }
+        dos.writeUTF("/file:" + fileName + ":" + chatServer.chunkMap(file));
+        chatServer.logCommand(owner.chatName, "/download:" + fileName, "파일 다운로드 시작");
+    }
+
+    // 요청한 청크 본문 전송. 인자 형식: 청크번호:파일명
+    void handleGet(String args) throws IOException {
+        int colon = args.indexOf(':');
+        String fileName = new File(args.substring(colon + 1).trim()).getName();
+        File file = chatServer.blobStore.file(fileName);
+        if (colon < 0 || file == null) {
+            return; // 클라이언트는 청크를 받지 못한 것으로 보고 다시 요청
+        }
+        ChunkMap map = chatServer.chunkMap(file);
+        List<Integer> chunks = ChunkMap.parseIndices(args.substring(0, colon), map.count());
+        ByteBuffer cached = chatServer.blobStore.cached(file);
+        if (cached != null) { // 많이 받는 파일은 메모리에서 바로 전송
+            for (int index : chunks) {
+                ByteBuffer chunk = cached.duplicate();
+                chunk.position((int) map.offset(index)).limit((int) map.offset(index) + map.length(index));
+                chatServer.metrics.downloadBytes.add(chunk.remaining());
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+            return;
+        }
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int index : chunks) {
+                long position = map.offset(index);
+                long end = position + map.length(index);
+                chatServer.metrics.downloadBytes.add(map.length(index));
+                while (position < end) {
+                    position += fc.transferTo(position, end - position, channel); // 제로 카피 전송
+                }
+            }
+        }
+    }
+
+    // 진행 중인 업로드 키 (파일명에는 '/'가 없으므로 마지막 '/'로 닉네임과 구분됨)
+    static String uploadKey(ClientService owner, String fileName) {
+        return owner.chatName + "/" + fileName;
+    }
+
+    // n번째 ':' 위치
+    static int nthColon(String text, int n) {
+        int index = -1;
+        for (int i = 0; i < n; i++) {
+            index = text.indexOf(':', index + 1);
+            if (index < 0) {
+                throw new IllegalArgumentException("인자가 부족합니다");
+            }
+        }
+        return index;
+    }
+}